@@ -24,7 +24,11 @@ public class BackHandler {
         public final float yRot, xRot;
 
         public PlayerPosition(ServerLevel level, double x, double y, double z, float yRot, float xRot) {
-            this.dimension = level.dimension().location();
+            this(level.dimension().location(), x, y, z, yRot, xRot);
+        }
+
+        public PlayerPosition(ResourceLocation dimension, double x, double y, double z, float yRot, float xRot) {
+            this.dimension = dimension;
             this.x = x;
             this.y = y;
             this.z = z;
@@ -81,13 +85,15 @@ public class BackHandler {
             previousPositions.remove(player.getUUID());
             return 0;
         }
-        recordPosition(player);
-        player.teleportTo(level, pos.x, pos.y, pos.z, pos.yRot, pos.xRot);
-        player.sendSystemMessage(ModConfigs.translateWithFallback(
-                "command.tpatool.back.success", "Teleported to previous position."
-        ));
-        ModConfigs.DebugLog.info("Player {} teleported back to dimension={}, x={}, y={}, z={}",
-                player.getName().getString(), pos.dimension, pos.x, pos.y, pos.z);
+        TeleportWarmup.start(player, level, pos.x, pos.z, mover -> {
+            recordPosition(mover);
+            mover.teleportTo(level, pos.x, pos.y, pos.z, pos.yRot, pos.xRot);
+            mover.sendSystemMessage(ModConfigs.translateWithFallback(
+                    "command.tpatool.back.success", "Teleported to previous position."
+            ));
+            ModConfigs.DebugLog.info("Player {} teleported back to dimension={}, x={}, y={}, z={}",
+                    mover.getName().getString(), pos.dimension, pos.x, pos.y, pos.z);
+        });
         return 1;
     }
 }
\ No newline at end of file
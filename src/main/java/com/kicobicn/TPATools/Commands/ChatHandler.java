@@ -3,24 +3,43 @@ package com.kicobicn.TPATools.Commands;
 import com.kicobicn.TPATools.config.ModConfigs;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.*;
-import net.minecraft.network.protocol.game.ClientboundSetTitleTextPacket;
-import net.minecraft.network.protocol.game.ClientboundSetTitlesAnimationPacket;
 import net.minecraft.server.level.ServerPlayer;
-import net.minecraft.sounds.SoundEvents;
-import net.minecraft.sounds.SoundSource;
-import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.event.ServerChatEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * 聊天消息处理：提到玩家时标色并交给 MentionNotifier 提示，&1、&hand 等占位符展示物品（见 ItemPlaceholders）。
+ * 原始文本只扫描一遍，直接生成消息组件。
+ */
 public class ChatHandler {
 
-    // 修改正则表达式匹配 &数字 模式 (例如 &1)
-    private static final Pattern ITEM_PATTERN = Pattern.compile("&(\\d)");
+    //在线玩家名，只在登录和退出时修改
+    private static final Map<UUID, String> onlineNames = new HashMap<>();
+    //由 onlineNames 生成，聊天时只读取
+    private static volatile MentionMatcher mentionMatcher = MentionMatcher.EMPTY;
+
+    @SubscribeEvent
+    public void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        onlineNames.put(event.getEntity().getUUID(), event.getEntity().getName().getString());
+        mentionMatcher = new MentionMatcher(onlineNames);
+    }
+
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (onlineNames.remove(event.getEntity().getUUID()) != null) {
+            mentionMatcher = new MentionMatcher(onlineNames);
+        }
+    }
 
     @SubscribeEvent
     public void onServerChat(ServerChatEvent event) {
@@ -30,11 +49,8 @@ public class ChatHandler {
 
             ModConfigs.DebugLog.info("Processing chat message from {}: {}", player.getName().getString(), originalMessage);
 
-            // 处理提到玩家功能
-            Component processedMessage = Component.nullToEmpty(processMentions(originalMessage, player));
-
-            // 处理展示物品功能
-            MutableComponent finalMessage = processItemDisplay(processedMessage, player);
+            // 处理提到玩家和展示物品功能
+            MutableComponent finalMessage = formatMessage(originalMessage, player);
 
             // 设置处理后的消息
             event.setMessage(finalMessage);
@@ -45,123 +61,71 @@ public class ChatHandler {
     }
 
     /**
-     * 处理提到玩家功能 (返回Component以更好地处理颜色代码)
+     * 自己的名字只标色，不提示；同一条消息中每个玩家只提示一次。
      */
-    private String processMentions(String message, ServerPlayer sender) {
-        // 获取所有在线玩家
-        var onlinePlayers = sender.getServer().getPlayerList().getPlayers();
-        String processedMessage = message; // 初始化为原消息
-
-        for (ServerPlayer target : onlinePlayers) {
-            String playerName = target.getName().getString();
-
-            // 跳过自己
-            if (target.getUUID().equals(sender.getUUID())) {
-                continue;
+    private MutableComponent formatMessage(String message, ServerPlayer sender) {
+        List<MentionMatcher.Mention> mentions = mentionMatcher.find(message);
+        Set<UUID> notified = mentions.isEmpty() ? Set.of() : new HashSet<>();
+        return buildMessage(message, mentions, index -> ItemPlaceholders.find(message, index, sender), mention -> {
+            if (mention.player().equals(sender.getUUID()) || !notified.add(mention.player())) {
+                return;
             }
-
-            // 如果消息中包含玩家名（不区分大小写）
-            if (message.toLowerCase().contains(playerName.toLowerCase())) {
-                ModConfigs.DebugLog.info("Player {} mentioned {}", sender.getName().getString(), playerName);
-
-                // 将玩家名标色
-                processedMessage = processedMessage.replaceAll("(?i)" + Pattern.quote(playerName),
-                        ChatFormatting.AQUA + playerName + ChatFormatting.RESET);
-
-                // 使用 Title 数据包来实现居中大标题提示的效果
-                ClientboundSetTitleTextPacket titlePacket =
-                        new ClientboundSetTitleTextPacket(
-                                ModConfigs.translateWithFallback(
-                                        "command.tpatool.chat.mention",
-                                        "%s mentioned you",
-                                        sender.getName()
-                                ).withStyle(ChatFormatting.AQUA)
-                        );
-// 设置标题显示时间、淡入淡出时间
-                ClientboundSetTitlesAnimationPacket timesPacket =
-                        new ClientboundSetTitlesAnimationPacket(10, 40, 10);
-                target.connection.send(timesPacket);
-                target.connection.send(titlePacket);
-
-                // 播放音效
-                target.playNotifySound(SoundEvents.NOTE_BLOCK_PLING.value(), SoundSource.PLAYERS, 1.0F, 1.0F);
+            ServerPlayer target = sender.getServer().getPlayerList().getPlayer(mention.player());
+            if (target != null) {
+                ModConfigs.DebugLog.info("Player {} mentioned {}", sender.getName().getString(), mention.name());
+                MentionNotifier.record(target, sender);
             }
-        }
-
-        // 特别处理：如果消息中包含自己的名字，也将其设置为青色
-        String senderName = sender.getName().getString();
-        if (processedMessage.contains(senderName)) {
-            processedMessage = processedMessage.replaceAll("(?i)" + Pattern.quote(senderName),
-                    ChatFormatting.AQUA + senderName + ChatFormatting.RESET);
-        }
-
-        return processedMessage;
+        });
     }
 
     /**
-     * 处理展示物品功能
+     * 按顺序扫描原始文本：玩家名生成青色的片段，物品占位符生成物品组件，其余文本原样保留。
+     * placeholders 返回 '&' 处的占位符（没有时为 null），onMention 对每个标色的玩家名调用一次。
      */
-    private MutableComponent processItemDisplay(Component originalComponent, ServerPlayer player) {
-        String message = originalComponent.getString();
-        List<Object> messageParts = new ArrayList<>();
-        Matcher matcher = ITEM_PATTERN.matcher(message);
-        int lastIndex = 0;
-
-        while (matcher.find()) {
-            // 添加前面的普通文本
-            if (matcher.start() > lastIndex) {
-                messageParts.add(message.substring(lastIndex, matcher.start()));
+    static MutableComponent buildMessage(String message, List<MentionMatcher.Mention> mentions,
+                                         IntFunction<ItemPlaceholders.Match> placeholders,
+                                         Consumer<MentionMatcher.Mention> onMention) {
+        MutableComponent finalMessage = Component.literal("");
+        int mentionIndex = 0;
+        int nextMention = mentions.isEmpty() ? -1 : mentions.get(0).start();
+        //尚未输出的普通文本的起点
+        int textStart = 0;
+        int i = 0;
+        while (i < message.length()) {
+            if (i == nextMention) {
+                MentionMatcher.Mention mention = mentions.get(mentionIndex++);
+                nextMention = mentionIndex < mentions.size() ? mentions.get(mentionIndex).start() : -1;
+                appendText(finalMessage, message, textStart, i);
+                // 将玩家名标色
+                finalMessage.append(Component.literal(mention.name()).withStyle(ChatFormatting.AQUA));
+                i = textStart = mention.end();
+                onMention.accept(mention);
+                continue;
             }
-
-            // 处理物品占位符
-            int slot = Integer.parseInt(matcher.group(1)) - 1; // 转换为0-8的索引
-            if (slot >= 0 && slot <= 8) {
-                ItemStack itemStack = player.getInventory().getItem(slot);
-                if (!itemStack.isEmpty()) {
-                    // 添加物品组件
-                    messageParts.add(createItemComponent(itemStack));
-                    ModConfigs.DebugLog.info("Replaced &{} with item: {}", slot + 1, itemStack.getDisplayName().getString());
-                } else {
-                    // 槽位为空，保留原文本
-                    messageParts.add(matcher.group(0));
-                    ModConfigs.DebugLog.info("Slot {} is empty, keeping original text", slot + 1);
+            // 物品占位符（见 ItemPlaceholders）；& 后面是玩家名的开头时按玩家名处理
+            if (message.charAt(i) == '&' && i + 1 != nextMention) {
+                ItemPlaceholders.Match placeholder = placeholders.apply(i);
+                if (placeholder != null) {
+                    appendText(finalMessage, message, textStart, i);
+                    finalMessage.append(placeholder.component());
+                    i = textStart = i + placeholder.length();
+                    // 跳过被占位符覆盖的玩家名
+                    while (nextMention >= 0 && nextMention < i) {
+                        mentionIndex++;
+                        nextMention = mentionIndex < mentions.size() ? mentions.get(mentionIndex).start() : -1;
+                    }
+                    continue;
                 }
-            } else {
-                // 无效槽位，保留原文本
-                messageParts.add(matcher.group(0));
-                ModConfigs.DebugLog.info("Invalid slot {}, keeping original text", slot + 1);
-            }
-
-            lastIndex = matcher.end();
-        }
-
-        // 添加剩余的文本
-        if (lastIndex < message.length()) {
-            messageParts.add(message.substring(lastIndex));
-        }
-
-        // 构建最终的消息组件
-        MutableComponent finalMessage = Component.literal("");
-        for (Object part : messageParts) {
-            if (part instanceof String) {
-                finalMessage.append(Component.literal((String) part));
-            } else if (part instanceof MutableComponent) {
-                finalMessage.append((MutableComponent) part);
             }
+            i++;
         }
-
+        appendText(finalMessage, message, textStart, message.length());
         return finalMessage;
     }
 
-    //展示物品组件
-    private MutableComponent createItemComponent(ItemStack itemStack) {
-        // 获取物品原有的显示名称和颜色（保持其原始样式）
-        MutableComponent itemDisplayName = itemStack.getDisplayName().copy();
-
-        // 构建组件：外括号为金色，物品名称为其原始颜色
-        return Component.literal("[") // 左外括号，金色
-                .withStyle(ChatFormatting.GOLD)
-                .append(itemDisplayName) // 物品名称，保持原色
-                .append(Component.literal("]").withStyle(ChatFormatting.GOLD));
+    private static void appendText(MutableComponent target, String message, int start, int end) {
+        if (end > start) {
+            target.append(Component.literal(message.substring(start, end)));
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,18 @@ package com.kicobicn.TPATools.Commands;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.kicobicn.TPATools.config.ModConfigs;
+import com.kicobicn.TPATools.storage.BinaryCodec;
+import com.kicobicn.TPATools.storage.MapStore;
+import com.kicobicn.TPATools.storage.StartupLoader;
+import com.kicobicn.TPATools.storage.Storage;
+import com.kicobicn.TPATools.storage.WriteBehindWriter;
+import com.kicobicn.TPATools.storage.WriteStats;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.resources.ResourceKey;
@@ -14,6 +22,8 @@ import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,33 +35,97 @@ public class GraveHandler {
     private static final Map<UUID, BackHandler.PlayerPosition> gravePositions = new HashMap<>();
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
-    //加载死亡位置
-    public static void loadGraves() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_graves.json");
-            if (Files.exists(path)) {
-                String jsonContent = Files.readString(path);
-                Map<UUID, BackHandler.PlayerPosition> loadedGraves = GSON.fromJson(jsonContent, new TypeToken<Map<UUID, BackHandler.PlayerPosition>>(){}.getType());
-                gravePositions.clear();
-                if (loadedGraves != null) {
-                    gravePositions.putAll(loadedGraves);
-                    ModConfigs.DebugLog.info("Loaded graves from tpatool_graves.json");
-                }
+    //死亡只修改内存并通知存储，由存储后端按 tick 合并写入
+    private static MapStore<UUID, BackHandler.PlayerPosition> graveStore;
+    private static long deathsRecorded;
+
+    //登记启动时的读取
+    public static void loadGraves(StartupLoader loader) {
+        gravePositions.clear();
+        graveStore = Storage.get().graves(() -> gravePositions);
+        loader.add("graves", graveStore::load, loaded -> {
+            gravePositions.putAll(loaded.data());
+            if (loaded.needsRewrite()) {
+                graveStore.saveAll();
             }
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to load graves: {}", e.getMessage());
-        }
+        });
     }
 
-    //保存死亡位置
+    public static void tick() {
+        graveStore.tick();
+    }
+
+    //立即写入并等待（服务器关闭时调用）
     public static void saveGraves() {
+        graveStore.flush();
+    }
+
+    public static WriteStats getWriteStats() {
+        return graveStore.getStats();
+    }
+
+    //记录的死亡次数，与 getWriteStats().getWriteCount() 对比可以看出合并效果
+    public static long getDeathsRecorded() {
+        return deathsRecorded;
+    }
+
+    //二进制格式：数量，然后每条记录的 UUID、维度索引、坐标和朝向
+    public static void writeGraves(DataOutputStream out, BinaryCodec.DimensionTable dimensions,
+                                   Map<UUID, BackHandler.PlayerPosition> graves) throws IOException {
+        BinaryCodec.writeVarInt(out, graves.size());
+        for (Map.Entry<UUID, BackHandler.PlayerPosition> entry : graves.entrySet()) {
+            BackHandler.PlayerPosition pos = entry.getValue();
+            BinaryCodec.writeUUID(out, entry.getKey());
+            dimensions.writeDimension(out, pos.dimension);
+            out.writeDouble(pos.x);
+            out.writeDouble(pos.y);
+            out.writeDouble(pos.z);
+            out.writeFloat(pos.yRot);
+            out.writeFloat(pos.xRot);
+        }
+    }
+
+    public static Map<UUID, BackHandler.PlayerPosition> readGraves(DataInputStream in, BinaryCodec.DimensionTable dimensions, int version) throws IOException {
+        int count = BinaryCodec.readVarInt(in);
+        Map<UUID, BackHandler.PlayerPosition> graves = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            UUID player = BinaryCodec.readUUID(in);
+            ResourceLocation dimension = dimensions.readDimension(in);
+            double x = in.readDouble();
+            double y = in.readDouble();
+            double z = in.readDouble();
+            float yRot = in.readFloat();
+            float xRot = in.readFloat();
+            graves.put(player, new BackHandler.PlayerPosition(dimension, x, y, z, yRot, xRot));
+        }
+        return graves;
+    }
+
+    //导出为 JSON，便于管理员查看和编辑
+    public static void exportJson(Path file) throws IOException {
+        WriteBehindWriter.writeAtomically(file, GSON.toJson(gravePositions));
+        ModConfigs.DebugLog.info("Exported {} graves to {}", gravePositions.size(), file.toString());
+    }
+
+    //从 JSON 导入并替换全部死亡位置，文件不存在时返回 false
+    public static boolean importJson(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        Map<UUID, BackHandler.PlayerPosition> importedGraves;
         try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_graves.json");
-            Files.writeString(path, GSON.toJson(gravePositions));
-            ModConfigs.DebugLog.info("Saved graves to tpatool_graves.json");
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to save graves: {}", e.getMessage());
+            importedGraves = GSON.fromJson(Files.readString(file), new TypeToken<Map<UUID, BackHandler.PlayerPosition>>(){}.getType());
+        } catch (JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
         }
+        gravePositions.clear();
+        if (importedGraves != null) {
+            gravePositions.putAll(importedGraves);
+        }
+        graveStore.saveAll();
+        saveGraves();
+        ModConfigs.DebugLog.info("Imported {} graves from {}", gravePositions.size(), file.toString());
+        return true;
     }
 
     //注册指令
@@ -83,7 +157,8 @@ public class GraveHandler {
                     player.getX(), player.getY(), player.getZ(),
                     player.getYRot(), player.getXRot()
             ));
-            saveGraves();
+            deathsRecorded++;
+            graveStore.put(player.getUUID(), gravePositions.get(player.getUUID()));
             ModConfigs.DebugLog.info("Recorded grave for {} at dimension={}, x={}, y={}, z={}",
                     player.getName().getString(), player.serverLevel().dimension().location(),
                     player.getX(), player.getY(), player.getZ());
@@ -106,16 +181,18 @@ public class GraveHandler {
                     "command.tpatool.grave.invalid_dimension", "Invalid dimension for death position!"
             ));
             gravePositions.remove(player.getUUID());
-            saveGraves();
+            graveStore.remove(player.getUUID());
             return 0;
         }
-        BackHandler.recordPosition(player);
-        player.teleportTo(level, pos.x, pos.y, pos.z, pos.yRot, pos.xRot);
-        player.sendSystemMessage(ModConfigs.translateWithFallback(
-                "command.tpatool.grave.success", "Teleported to last death position."
-        ));
-        ModConfigs.DebugLog.info("Player {} teleported to grave at dimension={}, x={}, y={}, z={}",
-                player.getName().getString(), pos.dimension, pos.x, pos.y, pos.z);
+        TeleportWarmup.start(player, level, pos.x, pos.z, mover -> {
+            BackHandler.recordPosition(mover);
+            mover.teleportTo(level, pos.x, pos.y, pos.z, pos.yRot, pos.xRot);
+            mover.sendSystemMessage(ModConfigs.translateWithFallback(
+                    "command.tpatool.grave.success", "Teleported to last death position."
+            ));
+            ModConfigs.DebugLog.info("Player {} teleported to grave at dimension={}, x={}, y={}, z={}",
+                    mover.getName().getString(), pos.dimension, pos.x, pos.y, pos.z);
+        });
         return 1;
     }
 }
\ No newline at end of file
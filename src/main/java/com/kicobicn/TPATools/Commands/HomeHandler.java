@@ -2,14 +2,22 @@ package com.kicobicn.TPATools.Commands;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.kicobicn.TPATools.config.ModConfigs;
-import com.mojang.authlib.GameProfile;
+import com.kicobicn.TPATools.storage.HomeCodec;
+import com.kicobicn.TPATools.storage.HomeStore;
+import com.kicobicn.TPATools.storage.StartupLoader;
+import com.kicobicn.TPATools.storage.Storage;
+import com.kicobicn.TPATools.storage.WriteBehindWriter;
+import com.kicobicn.TPATools.storage.WriteStats;
 import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.logging.LogUtils;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.commands.arguments.EntityArgument;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
@@ -20,28 +28,59 @@ import net.minecraft.resources.ResourceKey;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.world.level.Level;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.server.ServerLifecycleHooks;
+import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class HomeHandler {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    //已加载的玩家家园：在线玩家和最近访问过的离线玩家（没有家的玩家对应空 Map）
     private static final Map<UUID, Map<String, Home>> playerHomes = new HashMap<>();
+    //常驻索引：公开家园和被分享的家园（含坐标），不需要加载所有者的分片
     private static final Map<String, Map<String, PublicHomeInfo>> publicHomesByOwner = new HashMap<>();
+    private static final Map<UUID, Map<String, Home>> sharedHomesByOwner = new HashMap<>();
+    //反向索引：被分享的玩家 -> 所有者 -> 家园名，与 sharedHomesByOwner 同步维护
+    private static final Map<UUID, Map<UUID, Set<String>>> sharedWithPlayer = new HashMap<>();
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
-    //PublicHomeInfo 类，用于存储公开家的 UUID 和用户名
-    private static class PublicHomeInfo {
+    //已加载的离线玩家，按访问顺序排列，超过 home_cache_size 时淘汰最久未访问的
+    private static final LinkedHashMap<UUID, Boolean> offlineCache = new LinkedHashMap<>(16, 0.75f, true);
+    //正在后台读取分片的玩家
+    private static final Map<UUID, CompletableFuture<Map<String, Home>>> pendingLoads = new HashMap<>();
+    //读取未加载玩家的分片；不使用写入线程，避免排在合并写入或压缩之后
+    private static final ExecutorService READ_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TPATools-HomeRead");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static int evictionTicks;
+
+    //PublicHomeInfo 类，用于存储公开家的 UUID、用户名和坐标
+    public static class PublicHomeInfo {
         public UUID ownerUUID;
         public String ownerName;
         public String homeName;
-        public PublicHomeInfo(UUID ownerUUID, String ownerName, String homeName) {
+        public Home.Position position;
+        public PublicHomeInfo(UUID ownerUUID, String ownerName, String homeName, Home.Position position) {
             this.ownerUUID = ownerUUID;
             this.ownerName = ownerName;
             this.homeName = homeName;
+            this.position = position;
         }
     }
 
@@ -75,216 +114,678 @@ public class HomeHandler {
     }
 
 
-    public static void loadHomes() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_homes.json"); // 使用统一配置目录
-            if (Files.exists(path)) {
-                String jsonContent = Files.readString(path);
-                Map<String, Object> data = GSON.fromJson(jsonContent, new TypeToken<Map<String, Object>>(){}.getType());
-                playerHomes.clear();
-                publicHomesByOwner.clear();
-
-                if (data != null) {
-                    // 加载 playerHomes
-                    Map<UUID, Map<String, Home>> loadedHomes = GSON.fromJson(
-                            GSON.toJson(data.get("playerHomes")), new TypeToken<Map<UUID, Map<String, Home>>>(){}.getType()
-                    );
-                    if (loadedHomes != null) {
-                        playerHomes.putAll(loadedHomes);
-                    }
-
-                    // 加载 publicHomesByOwner
-                    Map<String, Map<String, PublicHomeInfo>> loadedPublicHomes = GSON.fromJson(
-                            GSON.toJson(data.get("publicHomesByOwner")),
-                            new TypeToken<Map<String, Map<String, PublicHomeInfo>>>(){}.getType()
-                    );
-                    if (loadedPublicHomes != null) {
-                        publicHomesByOwner.putAll(loadedPublicHomes);
-                    }
+    //旧版单文件格式，首次启动时迁移到当前存储后端
+    private static final String LEGACY_HOMES_FILE = "tpatool_homes.json";
 
-                    ModConfigs.DebugLog.info("Loaded homes and public homes from {}", path.toString());
-                }
-            }
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to load homes: {}", e.getMessage());
+    //持久化由存储后端负责，内存数据通过 SOURCE 提供给它
+    private static HomeStore homeStore;
+    private static final HomeStore.Source SOURCE = new HomeStore.Source() {
+        @Override
+        public Map<String, Home> getHomes(UUID owner) {
+            return playerHomes.get(owner);
         }
-    }
 
-    public static void saveHomes() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_homes.json"); // 使用统一配置目录
-            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-            Map<String, Object> data = new HashMap<>();
-            data.put("playerHomes", playerHomes);
+        @Override
+        public Map<String, Map<String, PublicHomeInfo>> getPublicHomes() {
+            return publicHomesByOwner;
+        }
 
-            // 公开家园的保存格式
-            Map<String, Map<String, PublicHomeInfo>> publicHomesData = new HashMap<>();
-            for (Map.Entry<String, Map<String, PublicHomeInfo>> ownerEntry : publicHomesByOwner.entrySet()) {
-                String ownerUUID = ownerEntry.getKey();
-                Map<String, PublicHomeInfo> homes = ownerEntry.getValue();
+        @Override
+        public Map<UUID, Map<String, Home>> getSharedHomes() {
+            return sharedHomesByOwner;
+        }
+    };
 
-                Map<String, PublicHomeInfo> ownerPublicHomes = new HashMap<>();
-                for (Map.Entry<String, PublicHomeInfo> homeEntry : homes.entrySet()) {
-                    String homeName = homeEntry.getKey();
-                    PublicHomeInfo info = homeEntry.getValue();
+    //启动时在后台读取的数据，由服务端线程安装
+    private static class StartupHomes {
+        final Map<UUID, Map<String, Home>> homes = new HashMap<>();
+        final Map<String, Map<String, PublicHomeInfo>> publicHomes = new HashMap<>();
+        final Map<UUID, Map<String, Home>> sharedHomes = new HashMap<>();
+        Path legacyPath; // 从旧版单文件读取，安装后迁移
+        boolean rebuildIndex;
+        boolean rewriteIndex; // 索引是另一种格式，安装后以当前格式重写
+    }
 
-                    // 确保所有者名称是最新的
-                    String ownerName = info.ownerName != null ? info.ownerName :
-                            (server != null && server.getProfileCache() != null ?
-                                    server.getProfileCache().get(UUID.fromString(ownerUUID))
-                                            .map(GameProfile::getName).orElse("Unknown") : "Unknown");
+    //登记启动时的读取：只读取索引，玩家的家园在登录或被访问时才加载
+    public static void loadHomes(StartupLoader loader) {
+        playerHomes.clear();
+        publicHomesByOwner.clear();
+        sharedHomesByOwner.clear();
+        sharedWithPlayer.clear();
+        HomeSuggestions.clear();
+        offlineCache.clear();
+        pendingLoads.clear();
+        homeStore = Storage.get().homes(SOURCE);
+        loader.add("homes", HomeHandler::readStartupHomes, HomeHandler::installStartupHomes);
+    }
 
-                    ownerPublicHomes.put(homeName, new PublicHomeInfo(
-                            UUID.fromString(ownerUUID), ownerName, homeName
-                    ));
+    //在加载线程上读取，不修改内存数据
+    private static StartupHomes readStartupHomes() throws IOException {
+        StartupHomes loaded = new StartupHomes();
+        Path legacyPath = ModConfigs.getConfigDir().resolve(LEGACY_HOMES_FILE);
+        if (Files.exists(legacyPath) && homeStore.listOwners().isEmpty()) {
+            readCombinedHomes(legacyPath, loaded.homes, loaded.publicHomes);
+            loaded.legacyPath = legacyPath;
+            return loaded;
+        }
+        HomeStore.IndexState state;
+        try {
+            state = homeStore.loadIndex(loaded.publicHomes, loaded.sharedHomes);
+        } catch (IOException e) {
+            ModConfigs.DebugLog.error("Failed to read home index: {}", e.getMessage());
+            loaded.publicHomes.clear();
+            state = HomeStore.IndexState.NEEDS_REBUILD;
+        }
+        loaded.rewriteIndex = state == HomeStore.IndexState.NEEDS_REWRITE;
+        if (state == HomeStore.IndexState.NEEDS_REBUILD) {
+            // 索引缺失或是旧格式（没有坐标和分享信息）：一次性读取全部玩家重建
+            ModConfigs.DebugLog.info("Home index is missing or outdated, rebuilding from player homes");
+            loaded.sharedHomes.clear();
+            loaded.rebuildIndex = true;
+            for (UUID owner : homeStore.listOwners()) {
+                Map<String, Home> homes = readHomes(owner);
+                if (homes != null) {
+                    loaded.homes.put(owner, homes);
                 }
-                publicHomesData.put(ownerUUID, ownerPublicHomes);
             }
-            data.put("publicHomesByOwner", publicHomesData);
+        }
+        return loaded;
+    }
 
-            Files.writeString(path, GSON.toJson(data));
-            ModConfigs.DebugLog.info("Saved homes and public homes to {}", path.toString());
+    //在服务端线程上安装读取结果，然后迁移旧数据或回放修改日志
+    private static void installStartupHomes(StartupHomes loaded) {
+        playerHomes.putAll(loaded.homes);
+        publicHomesByOwner.putAll(loaded.publicHomes);
+        sharedHomesByOwner.putAll(loaded.sharedHomes);
+        HomeSuggestions.markAll();
+        for (Map.Entry<UUID, Map<String, Home>> entry : sharedHomesByOwner.entrySet()) {
+            for (Map.Entry<String, Home> homeEntry : entry.getValue().entrySet()) {
+                indexGrantees(entry.getKey(), homeEntry.getKey(), homeEntry.getValue().sharedPlayers);
+            }
+        }
+        if (loaded.legacyPath != null) {
+            migrateLegacyHomes(loaded.legacyPath);
+        } else {
+            if (loaded.rebuildIndex) {
+                rebuildIndex();
+            }
+            if (loaded.rebuildIndex || loaded.rewriteIndex) {
+                homeStore.saveAll(Collections.emptyList());
+            }
+            try {
+                homeStore.replay(operation -> {
+                    if (getHomes(operation.owner) == null) {
+                        LOGGER.error("Skipping home journal record '{}' for {}: their homes could not be loaded",
+                                operation.op, operation.owner);
+                        return;
+                    }
+                    applyOperation(operation);
+                });
+            } catch (IOException e) {
+                ModConfigs.DebugLog.error("Failed to replay home journal: {}", e.getMessage());
+            }
+        }
+        // 公开家园记录了所有者名称，预先填入名称缓存
+        for (Map<String, PublicHomeInfo> homes : publicHomesByOwner.values()) {
+            for (PublicHomeInfo info : homes.values()) {
+                PlayerNameCache.remember(info.ownerUUID, info.ownerName);
+            }
+        }
+        // 启动时没有在线玩家，已经读入的玩家都进入离线缓存
+        for (UUID owner : playerHomes.keySet()) {
+            offlineCache.put(owner, Boolean.TRUE);
+        }
+        int publicCount = 0;
+        for (Map<String, PublicHomeInfo> homes : publicHomesByOwner.values()) {
+            publicCount += homes.size();
+        }
+        int sharedCount = 0;
+        for (Map<String, Home> homes : sharedHomesByOwner.values()) {
+            sharedCount += homes.size();
+        }
+        ModConfigs.DebugLog.info("Loaded home index ({} public, {} shared) and {} players",
+                publicCount, sharedCount, playerHomes.size());
+    }
+
+    //读取一个玩家的家园；只做读取，可以在 IO 线程上调用，读取失败时返回 null
+    private static Map<String, Home> readHomes(UUID owner) {
+        try {
+            return homeStore.loadHomes(owner);
         } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to save homes: {}", e.getMessage());
+            LOGGER.error("Skipping unreadable homes of {}: {}", owner, e.getMessage(), e);
+            return null;
         }
     }
 
-    // Tab补全：玩家自己的家
-    private static final SuggestionProvider<CommandSourceStack> OWN_HOME_SUGGESTIONS = (context, builder) -> {
-        ServerPlayer player = context.getSource().getPlayerOrException();
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
+    //在服务端线程上登记读入的家园；已经加载过的玩家保留内存中的数据，读取失败时返回 null
+    private static Map<String, Home> installHomes(UUID owner, Map<String, Home> loaded) {
+        pendingLoads.remove(owner);
+        Map<String, Home> homes = playerHomes.get(owner);
         if (homes != null) {
-            for (String homeName : homes.keySet()) {
-                builder.suggest(homeName);
-            }
+            return homes;
         }
-        return builder.buildFuture();
-    };
+        if (loaded == null) {
+            // 读取失败时不登记，避免空数据覆盖存储中的家园；下次访问时重新读取
+            return null;
+        }
+        playerHomes.put(owner, loaded);
+        HomeSuggestions.markOwner(owner);
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null || server.getPlayerList().getPlayer(owner) == null) {
+            offlineCache.put(owner, Boolean.TRUE);
+        }
+        return loaded;
+    }
 
+    /**
+     * 在后台读取玩家的分片，完成后回到服务端线程登记；同一玩家同时只读取一次。
+     * 只有没有未写入修改的玩家才会被淘汰，所以磁盘上的分片就是最新的，不需要排在写入之后。
+     */
+    private static CompletableFuture<Map<String, Home>> loadAsync(UUID owner) {
+        CompletableFuture<Map<String, Home>> load = pendingLoads.get(owner);
+        if (load != null) {
+            return load;
+        }
+        load = CompletableFuture.supplyAsync(() -> readHomes(owner), READ_EXECUTOR);
+        pendingLoads.put(owner, load);
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server != null) {
+            load.thenAcceptAsync(homes -> installHomes(owner, homes), server);
+        }
+        return load;
+    }
 
-    // Tab补全：公开的家
-    private static final SuggestionProvider<CommandSourceStack> PUBLIC_HOME_SUGGESTIONS = (context, builder) -> {
+    //获取玩家的家园；未加载时读取并等待（启动时回放日志使用），读取失败时返回 null
+    private static Map<String, Home> getHomes(UUID owner) {
+        Map<String, Home> homes = playerHomes.get(owner);
+        if (homes != null) {
+            offlineCache.get(owner); // 刷新访问顺序
+            return homes;
+        }
         try {
-            ServerPlayer player = context.getSource().getPlayerOrException();
-            Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(player.getUUID().toString());
+            return installHomes(owner, loadAsync(owner).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.error("Failed to load homes of {}", owner, e.getCause());
+        }
+        return null;
+    }
 
-            if (ownerPublicHomes != null) {
-                for (String homeName : ownerPublicHomes.keySet()) {
-                    builder.suggest(homeName);
-                }
+    /**
+     * 命令使用：未加载时最多等待 home_load_wait_ms，仍未读完时提示稍后再试并返回 null，读取在后台完成。
+     * 分片读取失败时提示错误并返回 null，命令不能在空数据上修改家园。
+     */
+    private static Map<String, Home> getHomes(ServerPlayer player) {
+        UUID owner = player.getUUID();
+        Map<String, Home> homes = playerHomes.get(owner);
+        if (homes != null) {
+            offlineCache.get(owner); // 刷新访问顺序
+            return homes;
+        }
+        try {
+            homes = installHomes(owner, loadAsync(owner).get(ModConfigs.HOME_LOAD_WAIT_MS.get(), TimeUnit.MILLISECONDS));
+            if (homes != null) {
+                return homes;
             }
-            return builder.buildFuture();
-        } catch (CommandSyntaxException e) {
-            return builder.buildFuture();
+        } catch (TimeoutException e) {
+            player.sendSystemMessage(ModConfigs.translateWithFallback(
+                    "command.tpatool.home.loading", "Your homes are still loading, please try again in a moment."
+            ));
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Failed to load homes of {}", owner, e.getCause());
         }
-    };
+        player.sendSystemMessage(ModConfigs.translateWithFallback(
+                "command.tpatool.home.load_failed", "Your homes could not be loaded, so they cannot be used or changed right now. Please contact an administrator."
+        ));
+        return null;
+    }
 
-    // Tab补全：非公开的家
-    private static final SuggestionProvider<CommandSourceStack> NON_PUBLIC_HOME_SUGGESTIONS = (context, builder) -> {
-        try {
-            ServerPlayer player = context.getSource().getPlayerOrException();
-            Map<String, Home> homes = playerHomes.get(player.getUUID());
-            Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(player.getUUID().toString());
+    //玩家登录时在后台读取家园，完成后回到服务端线程登记
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        UUID owner = event.getEntity().getUUID();
+        offlineCache.remove(owner);
+        if (playerHomes.containsKey(owner)) {
+            return;
+        }
+        loadAsync(owner);
+    }
 
-            if (homes != null) {
-                for (String homeName : homes.keySet()) {
-                    // 检查家园是否不是公开的
-                    if (ownerPublicHomes == null || !ownerPublicHomes.containsKey(homeName)) {
-                        builder.suggest(homeName);
-                    }
+    //玩家下线后家园留在离线缓存中，按访问顺序淘汰
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        UUID owner = event.getEntity().getUUID();
+        HomeSuggestions.forgetRecentHomes(owner);
+        if (playerHomes.containsKey(owner)) {
+            offlineCache.put(owner, Boolean.TRUE);
+        }
+    }
+
+    //淘汰超出缓存容量的离线玩家；有未写入修改的玩家要等写入后再淘汰
+    private static void evictOfflineHomes() {
+        int excess = offlineCache.size() - ModConfigs.HOME_CACHE_SIZE.get();
+        if (excess <= 0) {
+            return;
+        }
+        Iterator<UUID> iterator = offlineCache.keySet().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            UUID owner = iterator.next();
+            if (homeStore.hasPendingWrites(owner)) {
+                continue;
+            }
+            iterator.remove();
+            playerHomes.remove(owner);
+            HomeSuggestions.markOwner(owner);
+            excess--;
+        }
+    }
+
+    //根据已加载的家园更新常驻索引中的一条记录
+    private static void refreshIndex(UUID owner, String homeName) {
+        HomeSuggestions.markOwner(owner);
+        Map<String, Home> homes = playerHomes.get(owner);
+        Home home = homes != null ? homes.get(homeName) : null;
+
+        String ownerKey = owner.toString();
+        Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(ownerKey);
+        PublicHomeInfo info = ownerPublicHomes != null ? ownerPublicHomes.get(homeName) : null;
+        if (info != null) {
+            if (home != null) {
+                info.position = home.position;
+            } else {
+                ownerPublicHomes.remove(homeName);
+                if (ownerPublicHomes.isEmpty()) {
+                    publicHomesByOwner.remove(ownerKey);
                 }
             }
-            return builder.buildFuture();
-        } catch (CommandSyntaxException e) {
-            return builder.buildFuture();
         }
-    };
 
-    // Tab补全：可访问的家（自己的）
-    private static final SuggestionProvider<CommandSourceStack> ACCESSIBLE_HOME_SUGGESTIONS = (context, builder) -> {
-        try {
-            ServerPlayer player = context.getSource().getPlayerOrException();
-            Map<String, Home> homes = playerHomes.get(player.getUUID());
-            if (homes != null) {
-                for (String homeName : homes.keySet()) {
-                    builder.suggest(homeName);
+        // 索引中保存副本，反向索引按旧副本的分享列表移除
+        Map<String, Home> ownerSharedHomes = sharedHomesByOwner.get(owner);
+        Home indexed = ownerSharedHomes != null ? ownerSharedHomes.get(homeName) : null;
+        if (indexed != null) {
+            unindexGrantees(owner, homeName, indexed.sharedPlayers);
+        }
+        if (home != null && !home.sharedPlayers.isEmpty()) {
+            if (ownerSharedHomes == null) {
+                ownerSharedHomes = new HashMap<>();
+                sharedHomesByOwner.put(owner, ownerSharedHomes);
+            }
+            Home copy = new Home(home.position, new ArrayList<>(home.sharedPlayers));
+            ownerSharedHomes.put(homeName, copy);
+            indexGrantees(owner, homeName, copy.sharedPlayers);
+        } else if (ownerSharedHomes != null) {
+            ownerSharedHomes.remove(homeName);
+            if (ownerSharedHomes.isEmpty()) {
+                sharedHomesByOwner.remove(owner);
+            }
+        }
+    }
+
+    private static void indexGrantees(UUID owner, String homeName, Collection<UUID> grantees) {
+        for (UUID grantee : grantees) {
+            HomeSuggestions.markGrantee(grantee);
+            sharedWithPlayer.computeIfAbsent(grantee, k -> new HashMap<>())
+                    .computeIfAbsent(owner, k -> new HashSet<>())
+                    .add(homeName);
+        }
+    }
+
+    private static void unindexGrantees(UUID owner, String homeName, Collection<UUID> grantees) {
+        for (UUID grantee : grantees) {
+            HomeSuggestions.markGrantee(grantee);
+            Map<UUID, Set<String>> owners = sharedWithPlayer.get(grantee);
+            Set<String> homeNames = owners != null ? owners.get(owner) : null;
+            if (homeNames == null) {
+                continue;
+            }
+            homeNames.remove(homeName);
+            if (homeNames.isEmpty()) {
+                owners.remove(owner);
+                if (owners.isEmpty()) {
+                    sharedWithPlayer.remove(grantee);
                 }
             }
-            return builder.buildFuture();
-        } catch (CommandSyntaxException e) {
-            ModConfigs.DebugLog.error("Failed to provide suggestions for /home tp: {}", e.getMessage());
-            return builder.buildFuture();
         }
-    };
+    }
 
+    //该家园是否分享给了 player
+    private static boolean isSharedWith(UUID owner, String homeName, UUID player) {
+        Map<UUID, Set<String>> owners = sharedWithPlayer.get(player);
+        Set<String> homeNames = owners != null ? owners.get(owner) : null;
+        return homeNames != null && homeNames.contains(homeName);
+    }
 
-    // Tab补全：/home otherhome 的 playername:homename
-    private static final SuggestionProvider<CommandSourceStack> OTHER_HOME_SUGGESTIONS = (context, builder) -> {
+    //从已加载的全部玩家重建索引（仅在所有玩家都已读入时调用）
+    private static void rebuildIndex() {
+        sharedHomesByOwner.clear();
+        sharedWithPlayer.clear();
+        HomeSuggestions.markAll();
+        for (String ownerKey : new ArrayList<>(publicHomesByOwner.keySet())) {
+            for (String homeName : new ArrayList<>(publicHomesByOwner.get(ownerKey).keySet())) {
+                refreshIndex(UUID.fromString(ownerKey), homeName);
+            }
+        }
+        for (Map.Entry<UUID, Map<String, Home>> entry : playerHomes.entrySet()) {
+            for (String homeName : entry.getValue().keySet()) {
+                refreshIndex(entry.getKey(), homeName);
+            }
+        }
+    }
+
+    //一次性迁移：旧的单文件格式已经读入内存，写入存储后端后把旧文件改名保留
+    private static void migrateLegacyHomes(Path legacyPath) {
         try {
-            ServerPlayer player = context.getSource().getPlayerOrException();
+            rebuildIndex();
+            homeStore.saveAll(playerHomes.keySet());
+            if (homeStore.flush()) {
+                Files.move(legacyPath, legacyPath.resolveSibling(LEGACY_HOMES_FILE + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+                ModConfigs.DebugLog.info("Migrated homes of {} players from {}", playerHomes.size(), legacyPath.toString());
+            }
+        } catch (IOException e) {
+            ModConfigs.DebugLog.error("Failed to migrate homes from {}: {}", legacyPath.toString(), e.getMessage());
+        }
+    }
 
-            // 处理公开家园
-            for (Map.Entry<String, Map<String, PublicHomeInfo>> ownerEntry : publicHomesByOwner.entrySet()) {
-                String ownerUUIDStr = ownerEntry.getKey();
-                Map<String, PublicHomeInfo> ownerHomes = ownerEntry.getValue();
+    //读取全部玩家的家园：已加载的取内存数据，其余在 IO 线程上读取但不放入缓存
+    private static Map<UUID, Map<String, Home>> collectAllHomes() throws IOException {
+        Set<UUID> unloaded = homeStore.listOwners();
+        unloaded.removeAll(playerHomes.keySet());
+        Map<UUID, Map<String, Home>> allHomes = new HashMap<>(WriteBehindWriter.callOnIOThread(() -> {
+            Map<UUID, Map<String, Home>> loaded = new HashMap<>();
+            for (UUID owner : unloaded) {
+                loaded.put(owner, homeStore.loadHomes(owner));
+            }
+            return loaded;
+        }));
+        allHomes.putAll(playerHomes);
+        allHomes.values().removeIf(Map::isEmpty);
+        return allHomes;
+    }
 
-                UUID ownerUUID = UUID.fromString(ownerUUIDStr);
-                String ownerName = player.getServer().getProfileCache().get(ownerUUID)
-                        .map(GameProfile::getName).orElse("Unknown");
+    //导出为单个 JSON 文件（与旧的 tpatool_homes.json 格式相同），便于管理员查看和编辑，也用于在存储后端之间迁移
+    public static void exportJson(Path file) throws IOException {
+        Map<UUID, Map<String, Home>> allHomes = collectAllHomes();
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("playerHomes", allHomes);
+        data.put("publicHomesByOwner", publicHomesByOwner);
+        WriteBehindWriter.writeAtomically(file, GSON.toJson(data));
+        ModConfigs.DebugLog.info("Exported homes of {} players to {}", allHomes.size(), file.toString());
+    }
 
-                for (String homeName : ownerHomes.keySet()) {
-                    builder.suggest(ownerName + ":" + homeName);
-                }
+    //从 JSON 文件导入并替换全部家园数据，文件不存在时返回 false
+    public static boolean importJson(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        Map<UUID, Map<String, Home>> importedHomes = new HashMap<>();
+        Map<String, Map<String, PublicHomeInfo>> importedPublicHomes = new HashMap<>();
+        try {
+            readCombinedHomes(file, importedHomes, importedPublicHomes);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        // 不在导入数据中的旧玩家写为没有家
+        Set<UUID> oldOwners = homeStore.listOwners();
+        oldOwners.addAll(playerHomes.keySet());
+        playerHomes.clear();
+        playerHomes.putAll(importedHomes);
+        publicHomesByOwner.clear();
+        publicHomesByOwner.putAll(importedPublicHomes);
+        rebuildIndex();
+        for (UUID owner : oldOwners) {
+            playerHomes.putIfAbsent(owner, new HashMap<>());
+        }
+        // 导入的玩家全部已加载，在线玩家之外的进入离线缓存
+        offlineCache.clear();
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        for (UUID owner : playerHomes.keySet()) {
+            if (server == null || server.getPlayerList().getPlayer(owner) == null) {
+                offlineCache.put(owner, Boolean.TRUE);
+            }
+        }
+        if (server != null) {
+            for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+                playerHomes.putIfAbsent(player.getUUID(), new HashMap<>());
             }
+        }
+        homeStore.saveAll(new ArrayList<>(playerHomes.keySet()));
+        homeStore.flush();
+        ModConfigs.DebugLog.info("Imported homes of {} players from {}", importedHomes.size(), file.toString());
+        return true;
+    }
 
-            // 处理私有分享的家园
-            for (Map.Entry<UUID, Map<String, Home>> entry : playerHomes.entrySet()) {
-                UUID ownerUUID = entry.getKey();
-                if (!ownerUUID.equals(player.getUUID())) {
-                    String ownerName = player.getServer().getProfileCache().get(ownerUUID)
-                            .map(GameProfile::getName).orElse("Unknown");
-                    for (Map.Entry<String, Home> homeEntry : entry.getValue().entrySet()) {
-                        if (homeEntry.getValue().sharedPlayers.contains(player.getUUID())) {
-                            builder.suggest(ownerName + ":" + homeEntry.getKey());
-                        }
-                    }
+    //流式读取 {"playerHomes": ..., "publicHomesByOwner": ...}
+    private static void readCombinedHomes(Path file, Map<UUID, Map<String, Home>> homesOut,
+                                          Map<String, Map<String, PublicHomeInfo>> publicHomesOut) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (key.equals("playerHomes")) {
+                    HomeCodec.readHomesByOwner(reader, homesOut);
+                } else if (key.equals("publicHomesByOwner")) {
+                    HomeCodec.readPublicHomes(reader, publicHomesOut);
+                } else {
+                    reader.skipValue();
                 }
             }
-            return builder.buildFuture();
-        } catch (CommandSyntaxException e) {
-            ModConfigs.DebugLog.error("Failed to provide suggestions for /home otherhome: {}", e.getMessage());
-            return builder.buildFuture();
+            reader.endObject();
         }
-    };
+    }
 
+    public static void tick() {
+        homeStore.tick();
+        // 发布本 tick 内修改过的补全数据
+        HomeSuggestions.publish(playerHomes, publicHomesByOwner, sharedHomesByOwner, sharedWithPlayer);
+        // 每秒检查一次离线缓存
+        if (++evictionTicks >= 20) {
+            evictionTicks = 0;
+            evictOfflineHomes();
+        }
+    }
 
-    // Tab补全：/home sharelist 的 in/out 参数
-    private static final SuggestionProvider<CommandSourceStack> SHARELIST_SUGGESTIONS = (context, builder) -> {
-        builder.suggest("in");
-        builder.suggest("out");
-        return builder.buildFuture();
-    };
+    public static WriteStats getWriteStats() {
+        return homeStore.getStats();
+    }
 
-    // Tab 补全：/home unshare 的玩家名（支持离线玩家）
-    private static final SuggestionProvider<CommandSourceStack> PLAYER_NAME_SUGGESTIONS = (context, builder) -> {
-        try {
-            ServerPlayer player = context.getSource().getPlayerOrException();
-            MinecraftServer server = player.getServer();
-            if (server != null) {
-                // 从 playerHomes 获取所有 UUID，转换为玩家名
-                for (UUID uuid : playerHomes.keySet()) {
-                    server.getProfileCache().get(uuid)
-                            .map(GameProfile::getName)
-                            .ifPresent(builder::suggest);
+    //立即写入并等待（服务器关闭时调用）
+    public static void saveHomes() {
+        homeStore.flush();
+    }
+
+    //家园修改记录：命令执行和日志回放都通过 applyOperation 修改内存数据
+    public static class HomeOperation {
+        public static final String SET = "set";
+        public static final String REMOVE = "remove";
+        public static final String RENAME = "rename";
+        public static final String SHARE = "share";
+        public static final String UNSHARE = "unshare";
+        public static final String PUBLIC = "public";
+        public static final String PRIVATE = "private";
+
+        public String op;
+        public UUID owner;
+        public String name;
+        public String newName;
+        public UUID player; // share/unshare 的目标，unshare 为 null 时表示取消全部分享
+        public String ownerName;
+        public Home.Position position;
+        //rename 记录改名时家园的完整数据和是否公开，回放时直接写入新名称，与快照中已有的数据无关
+        public List<UUID> sharedPlayers;
+        public Boolean publicHome;
+
+        private HomeOperation(String op, UUID owner, String name) {
+            this.op = op;
+            this.owner = owner;
+            this.name = name;
+        }
+
+        public static HomeOperation set(UUID owner, String name, Home.Position position) {
+            HomeOperation operation = new HomeOperation(SET, owner, name);
+            operation.position = position;
+            return operation;
+        }
+
+        public static HomeOperation remove(UUID owner, String name) {
+            return new HomeOperation(REMOVE, owner, name);
+        }
+
+        public static HomeOperation rename(UUID owner, String name, String newName, Home home, PublicHomeInfo publicInfo) {
+            HomeOperation operation = new HomeOperation(RENAME, owner, name);
+            operation.newName = newName;
+            operation.position = home.position;
+            operation.sharedPlayers = new ArrayList<>(home.sharedPlayers);
+            operation.publicHome = publicInfo != null;
+            operation.ownerName = publicInfo != null ? publicInfo.ownerName : null;
+            return operation;
+        }
+
+        public static HomeOperation share(UUID owner, String name, UUID player) {
+            HomeOperation operation = new HomeOperation(SHARE, owner, name);
+            operation.player = player;
+            return operation;
+        }
+
+        public static HomeOperation unshare(UUID owner, String name, UUID player) {
+            HomeOperation operation = new HomeOperation(UNSHARE, owner, name);
+            operation.player = player;
+            return operation;
+        }
+
+        public static HomeOperation publicize(UUID owner, String ownerName, String name) {
+            HomeOperation operation = new HomeOperation(PUBLIC, owner, name);
+            operation.ownerName = ownerName;
+            return operation;
+        }
+
+        public static HomeOperation privatize(UUID owner, String name) {
+            return new HomeOperation(PRIVATE, owner, name);
+        }
+    }
+
+    //修改内存数据并交给存储后端记录
+    private static void commitOperation(HomeOperation operation) {
+        applyOperation(operation);
+        homeStore.record(operation);
+    }
+
+    /**
+     * 回放时日志中的记录可能已经部分或全部写入快照（压缩时部分分片写入失败，或写入后、删除日志前崩溃），
+     * 因此每种操作的结果只取决于记录本身：对同一个家园，按顺序重放整段日志后总是得到最后一条记录的结果。
+     */
+    private static void applyOperation(HomeOperation operation) {
+        UUID owner = operation.owner;
+        String ownerKey = owner.toString();
+        Map<String, Home> homes = playerHomes.get(owner);
+        Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(ownerKey);
+        switch (operation.op) {
+            case HomeOperation.SET -> {
+                // 只修改已加载的玩家：未加载或读取失败时新建 Map 会在写入时覆盖磁盘上的家园
+                if (homes == null) {
+                    LOGGER.error("Refusing to set home {} for {}: their homes are not loaded", operation.name, owner);
+                    return;
                 }
+                homes.put(operation.name, new Home(operation.position, new ArrayList<>()));
+            }
+            case HomeOperation.REMOVE -> {
+                // 删除最后一个家后保留空 Map，表示该玩家已加载且没有家
+                if (homes != null) {
+                    homes.remove(operation.name);
+                }
+                // 同时从公开家园列表中移除
+                if (ownerPublicHomes != null) {
+                    ownerPublicHomes.remove(operation.name);
+                    if (ownerPublicHomes.isEmpty()) {
+                        publicHomesByOwner.remove(ownerKey);
+                    }
+                }
+            }
+            case HomeOperation.RENAME -> {
+                if (operation.position == null) {
+                    // 旧版日志没有家园数据，只能按内存中的数据改名
+                    if (homes == null || !homes.containsKey(operation.name) || homes.containsKey(operation.newName)) {
+                        return;
+                    }
+                    homes.put(operation.newName, homes.remove(operation.name));
+                    // 更新公开家园列表中的名称（如果这个家园是公开的）
+                    if (ownerPublicHomes != null && ownerPublicHomes.containsKey(operation.name)) {
+                        PublicHomeInfo info = ownerPublicHomes.remove(operation.name);
+                        ownerPublicHomes.put(operation.newName, new PublicHomeInfo(info.ownerUUID, info.ownerName, operation.newName, info.position));
+                    }
+                    refreshIndex(owner, operation.newName);
+                } else {
+                    if (homes == null) {
+                        LOGGER.error("Refusing to rename home {} for {}: their homes are not loaded", operation.name, owner);
+                        return;
+                    }
+                    // 快照中可能已经是改名后的状态，旧名称不存在、新名称已存在时同样按记录写入
+                    homes.remove(operation.name);
+                    homes.put(operation.newName, new Home(operation.position, new ArrayList<>(operation.sharedPlayers)));
+                    if (ownerPublicHomes != null) {
+                        ownerPublicHomes.remove(operation.name);
+                    }
+                    if (operation.publicHome) {
+                        publicHomesByOwner.computeIfAbsent(ownerKey, k -> new HashMap<>()).put(operation.newName,
+                                new PublicHomeInfo(owner, operation.ownerName, operation.newName, null));
+                    } else if (ownerPublicHomes != null) {
+                        ownerPublicHomes.remove(operation.newName);
+                    }
+                    if (ownerPublicHomes != null && ownerPublicHomes.isEmpty()) {
+                        publicHomesByOwner.remove(ownerKey);
+                    }
+                    refreshIndex(owner, operation.newName);
+                }
+            }
+            case HomeOperation.SHARE -> {
+                Home home = homes != null ? homes.get(operation.name) : null;
+                if (home != null && !home.sharedPlayers.contains(operation.player)) {
+                    home.sharedPlayers.add(operation.player);
+                }
+            }
+            case HomeOperation.UNSHARE -> {
+                Home home = homes != null ? homes.get(operation.name) : null;
+                if (home != null) {
+                    if (operation.player == null) {
+                        home.sharedPlayers.clear();
+                    } else {
+                        home.sharedPlayers.remove(operation.player);
+                    }
+                }
+            }
+            case HomeOperation.PUBLIC -> publicHomesByOwner.computeIfAbsent(ownerKey, k -> new HashMap<>())
+                    .put(operation.name, new PublicHomeInfo(owner, operation.ownerName, operation.name, null));
+            case HomeOperation.PRIVATE -> {
+                if (ownerPublicHomes != null) {
+                    ownerPublicHomes.remove(operation.name);
+                    if (ownerPublicHomes.isEmpty()) {
+                        publicHomesByOwner.remove(ownerKey);
+                    }
+                }
+            }
+            default -> {
+                ModConfigs.DebugLog.warn("Unknown home operation: {}", operation.op);
+                return;
             }
-            return builder.buildFuture();
-        } catch (CommandSyntaxException e) {
-            ModConfigs.DebugLog.error("Failed to provide player name suggestions: {}", e.getMessage());
-            return builder.buildFuture();
         }
-    };
+        // 公开和分享的家园同步到常驻索引
+        refreshIndex(owner, operation.name);
+    }
 
+    // Tab补全：/home sharelist 的 in/out 参数
+    private static final SuggestionProvider<CommandSourceStack> SHARELIST_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("in", "out"), builder);
 
     @SubscribeEvent
     public static void onRegisterCommands(RegisterCommandsEvent event) {
@@ -294,7 +795,7 @@ public class HomeHandler {
                         .requires(source -> ModConfigs.checkCommandPermission(source, "home"))
                         .then(Commands.literal("tp")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(ACCESSIBLE_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OWN_HOMES)
                                         .executes(context -> teleportToHome(context.getSource().getPlayerOrException(), StringArgumentType.getString(context, "name")))))
                         .then(Commands.literal("set")
                                 .then(Commands.argument("name", StringArgumentType.string())
@@ -303,11 +804,11 @@ public class HomeHandler {
                                 .executes(context -> listHomes(context.getSource().getPlayerOrException())))
                         .then(Commands.literal("remove")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(OWN_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OWN_HOMES)
                                         .executes(context -> removeHome(context.getSource().getPlayerOrException(), StringArgumentType.getString(context, "name")))))
                         .then(Commands.literal("rename")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(OWN_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OWN_HOMES)
                                         .then(Commands.argument("newName", StringArgumentType.string())
                                                 .executes(context -> renameHome(
                                                         context.getSource().getPlayerOrException(),
@@ -316,7 +817,7 @@ public class HomeHandler {
                                                 )))))
                         .then(Commands.literal("share")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(OWN_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OWN_HOMES)
                                         .then(Commands.argument("player", EntityArgument.player())
                                                 .executes(context -> shareHome(
                                                         context.getSource().getPlayerOrException(),
@@ -325,15 +826,15 @@ public class HomeHandler {
                                                 )))))
                         .then(Commands.literal("public")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(NON_PUBLIC_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.NON_PUBLIC_HOMES)
                                         .executes(context -> setPublicHome(context.getSource().getPlayerOrException(), StringArgumentType.getString(context, "name")))))
                         .then(Commands.literal("private")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(PUBLIC_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.PUBLIC_HOMES)
                                         .executes(context -> setPrivateHome(context.getSource().getPlayerOrException(), StringArgumentType.getString(context, "name")))))
                         .then(Commands.literal("otherhome")
                                 .then(Commands.argument("home", StringArgumentType.greedyString())
-                                        .suggests(OTHER_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OTHER_HOMES)
                                         .executes(context -> teleportToOtherHome(context.getSource().getPlayerOrException(), StringArgumentType.getString(context, "home")))))
                         .then(Commands.literal("otherlist")
                                 .executes(context -> listOtherHomes(context.getSource().getPlayerOrException())))
@@ -346,7 +847,7 @@ public class HomeHandler {
                                         ))))
                         .then(Commands.literal("unshare")
                                 .then(Commands.argument("name", StringArgumentType.string())
-                                        .suggests(OWN_HOME_SUGGESTIONS)
+                                        .suggests(HomeSuggestions.OWN_HOMES)
                                         .executes(context -> unshareHome(
                                                 context.getSource().getPlayerOrException(),
                                                 StringArgumentType.getString(context, "name"),
@@ -354,7 +855,7 @@ public class HomeHandler {
                                                 null
                                         ))
                                         .then(Commands.argument("player", StringArgumentType.string())
-                                                .suggests(PLAYER_NAME_SUGGESTIONS)
+                                                .suggests(HomeSuggestions.grantees("name"))
                                                 .executes(context -> unshareHome(
                                                         context.getSource().getPlayerOrException(),
                                                         StringArgumentType.getString(context, "name"),
@@ -367,7 +868,10 @@ public class HomeHandler {
     }
 
     private static int setHome(ServerPlayer player, String homeName) {
-        Map<String, Home> homes = playerHomes.computeIfAbsent(player.getUUID(), k -> new HashMap<>());
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
         if (homes.size() >= ModConfigs.MAX_HOMES.get()) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.limit_exceeded", "You have reached the maximum number of homes (%s)!", ModConfigs.MAX_HOMES.get()
@@ -385,8 +889,7 @@ public class HomeHandler {
                 player.getX(), player.getY(), player.getZ(),
                 player.getXRot(), player.getYRot(), dimension
         );
-        homes.put(homeName, new Home(position, new ArrayList<>()));
-        saveHomes();
+        commitOperation(HomeOperation.set(player.getUUID(), homeName, position));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.set", "Home %s set at your current position.", homeName
         ));
@@ -396,8 +899,11 @@ public class HomeHandler {
 
 
     private static int teleportToHome(ServerPlayer player, String name) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes != null && homes.containsKey(name)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (homes.containsKey(name)) {
             Home home = homes.get(name);
             ServerLevel level = player.getServer().getLevel(ResourceKey.create(
                     Registries.DIMENSION, home.position.dimension));
@@ -407,23 +913,29 @@ public class HomeHandler {
                 ));
                 return 0;
             }
-            BackHandler.recordPosition(player);
-            player.teleportTo(level, home.position.x, home.position.y, home.position.z,
-                    home.position.yRot, home.position.xRot);
-            player.sendSystemMessage(ModConfigs.translateWithFallback(
-                    "command.tpatool.home.teleported", "Teleported to home %s.", name
-            ));
-            ModConfigs.DebugLog.info("Player {} teleported to home {} at dimension={}, x={}, y={}, z={}",
-                    player.getName().getString(), name, home.position.dimension,
-                    home.position.x, home.position.y, home.position.z);
+            TeleportWarmup.start(player, level, home.position.x, home.position.z, mover -> {
+                BackHandler.recordPosition(mover);
+                mover.teleportTo(level, home.position.x, home.position.y, home.position.z,
+                        home.position.yRot, home.position.xRot);
+                mover.sendSystemMessage(ModConfigs.translateWithFallback(
+                        "command.tpatool.home.teleported", "Teleported to home %s.", name
+                ));
+                HomeSuggestions.recordRecentHome(mover.getUUID(), name);
+                ModConfigs.DebugLog.info("Player {} teleported to home {} at dimension={}, x={}, y={}, z={}",
+                        mover.getName().getString(), name, home.position.dimension,
+                        home.position.x, home.position.y, home.position.z);
+            });
             return 1;
         }
         return teleportToOtherHome(player, name); // 尝试作为他人家处理
     }
 
     private static int listHomes(ServerPlayer player) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || homes.isEmpty()) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (homes.isEmpty()) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.list_empty", "You have no homes set."
             ));
@@ -455,14 +967,13 @@ public class HomeHandler {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
                         "command.tpatool.sharelist.in", "Homes shared with you:"
                 ));
-                for (Map.Entry<UUID, Map<String, Home>> entry : playerHomes.entrySet()) {
+                for (Map.Entry<UUID, Set<String>> entry : sharedWithPlayer.getOrDefault(player.getUUID(), Map.of()).entrySet()) {
                     UUID ownerUUID = entry.getKey();
-                    String ownerName = player.getServer().getProfileCache().get(ownerUUID)
-                            .map(GameProfile::getName).orElse("Unknown");
-                    for (Map.Entry<String, Home> homeEntry : entry.getValue().entrySet()) {
-                        String homeName = homeEntry.getKey();
-                        Home home = homeEntry.getValue();
-                        if (home.sharedPlayers.contains(player.getUUID())) {
+                    String ownerName = PlayerNameCache.getName(ownerUUID);
+                    Map<String, Home> ownerSharedHomes = sharedHomesByOwner.get(ownerUUID);
+                    for (String homeName : entry.getValue()) {
+                        Home home = ownerSharedHomes != null ? ownerSharedHomes.get(homeName) : null;
+                        if (home != null) {
                             String dimensionName = home.position.dimension != null
                                     ? home.position.dimension.toString()
                                     : "unknown";
@@ -483,8 +994,11 @@ public class HomeHandler {
                 }
                 return 1;
             } else {
-                Map<String, Home> homes = playerHomes.get(player.getUUID());
-                if (homes == null || homes.isEmpty()) {
+                Map<String, Home> homes = getHomes(player);
+                if (homes == null) {
+                    return 0;
+                }
+                if (homes.isEmpty()) {
                     player.sendSystemMessage(ModConfigs.translateWithFallback(
                             "command.tpatool.sharelist.out_empty", "You have not shared any homes."
                     ));
@@ -500,8 +1014,7 @@ public class HomeHandler {
                     if (!home.sharedPlayers.isEmpty()) {
                         List<String> sharedPlayerNames = new ArrayList<>();
                         for (UUID sharedUUID : home.sharedPlayers) {
-                            String playerName = player.getServer().getProfileCache().get(sharedUUID)
-                                    .map(GameProfile::getName).orElse("Unknown");
+                            String playerName = PlayerNameCache.getName(sharedUUID);
                             sharedPlayerNames.add(playerName);
                         }
                         String dimensionName = home.position.dimension != null
@@ -534,30 +1047,18 @@ public class HomeHandler {
 
 
     private static int removeHome(ServerPlayer player, String name) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(name)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(name)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", name
             ));
             return 0;
         }
 
-        homes.remove(name);
-
-        // 同时从公开家园列表中移除
-        Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(player.getUUID().toString());
-        if (ownerPublicHomes != null) {
-            ownerPublicHomes.remove(name);
-            if (ownerPublicHomes.isEmpty()) {
-                publicHomesByOwner.remove(player.getUUID().toString());
-            }
-        }
-
-        if (homes.isEmpty()) {
-            playerHomes.remove(player.getUUID());
-        }
-
-        saveHomes();
+        commitOperation(HomeOperation.remove(player.getUUID(), name));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.removed", "Home %s removed.", name
         ));
@@ -566,8 +1067,11 @@ public class HomeHandler {
     }
 
     private static int renameHome(ServerPlayer player, String oldName, String newName) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(oldName)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(oldName)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", oldName
             ));
@@ -580,18 +1084,9 @@ public class HomeHandler {
             return 0;
         }
 
-        Home home = homes.remove(oldName);
-        homes.put(newName, home);
-
-        // 更新公开家园列表中的名称（如果这个家园是公开的）
         Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(player.getUUID().toString());
-        if (ownerPublicHomes != null && ownerPublicHomes.containsKey(oldName)) {
-            PublicHomeInfo info = ownerPublicHomes.remove(oldName);
-            // 使用三个参数的构造函数
-            ownerPublicHomes.put(newName, new PublicHomeInfo(info.ownerUUID, info.ownerName, newName));
-        }
-
-        saveHomes();
+        commitOperation(HomeOperation.rename(player.getUUID(), oldName, newName, homes.get(oldName),
+                ownerPublicHomes != null ? ownerPublicHomes.get(oldName) : null));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.renamed", "Home %s renamed to %s.", oldName, newName
         ));
@@ -601,8 +1096,11 @@ public class HomeHandler {
 
 
     private static int shareHome(ServerPlayer player, String name, ServerPlayer target) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(name)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(name)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", name
             ));
@@ -615,8 +1113,7 @@ public class HomeHandler {
             ));
             return 0;
         }
-        home.sharedPlayers.add(target.getUUID());
-        saveHomes();
+        commitOperation(HomeOperation.share(player.getUUID(), name, target.getUUID()));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.shared", "Home %s shared with %s.", name, target.getName()
         ));
@@ -629,8 +1126,11 @@ public class HomeHandler {
 
     //unshareHome 方法
     private static int unshareHome(ServerPlayer player, String homeName, String targetPlayerName, CommandSourceStack source) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(homeName)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(homeName)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", homeName
             ));
@@ -644,29 +1144,28 @@ public class HomeHandler {
                 ));
                 return 0;
             }
-            home.sharedPlayers.clear();
+            commitOperation(HomeOperation.unshare(player.getUUID(), homeName, null));
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.unshare.all", "Removed sharing of home %s for all players.", homeName
             ));
-            saveHomes();
             return 1;
         } else {
             MinecraftServer server = player.getServer();
-            Optional<GameProfile> profile = server.getProfileCache().get(targetPlayerName);
-            if (profile.isEmpty()) {
+            Optional<UUID> target = PlayerNameCache.findUUID(targetPlayerName);
+            if (target.isEmpty()) {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
                         "command.tpatool.unshare.player_not_found", "Player %s not found!", targetPlayerName
                 ));
                 return 0;
             }
-            UUID targetUUID = profile.get().getId();
+            UUID targetUUID = target.get();
             if (!home.sharedPlayers.contains(targetUUID)) {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
                         "command.tpatool.unshare.not_shared", "Home %s is not shared with %s!", homeName, targetPlayerName
                 ));
                 return 0;
             }
-            home.sharedPlayers.remove(targetUUID);
+            commitOperation(HomeOperation.unshare(player.getUUID(), homeName, targetUUID));
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.unshare.player", "Removed sharing of home %s with %s.", homeName, targetPlayerName
             ));
@@ -676,15 +1175,17 @@ public class HomeHandler {
                         "command.tpatool.unshare.notify", "%s has removed sharing of their home %s with you.", player.getName().getString(), homeName
                 ));
             }
-            saveHomes();
             return 1;
         }
     }
 
 
     private static int setPublicHome(ServerPlayer player, String homeName) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(homeName)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(homeName)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", homeName
             ));
@@ -700,15 +1201,8 @@ public class HomeHandler {
             return 0;
         }
 
-        // 添加公开家园信息 - 使用三个参数的构造函数
-        String ownerName = player.getName().getString();
-        PublicHomeInfo info = new PublicHomeInfo(player.getUUID(), ownerName, homeName);
-
-        // 使用玩家UUID作为外层键，家园名称作为内层键
-        publicHomesByOwner.computeIfAbsent(player.getUUID().toString(), k -> new HashMap<>())
-                .put(homeName, info);
-
-        saveHomes();
+        // 添加公开家园信息
+        commitOperation(HomeOperation.publicize(player.getUUID(), player.getName().getString(), homeName));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.publicized", "Home %s is now public.", homeName
         ));
@@ -717,8 +1211,11 @@ public class HomeHandler {
     }
 
     private static int setPrivateHome(ServerPlayer player, String homeName) {
-        Map<String, Home> homes = playerHomes.get(player.getUUID());
-        if (homes == null || !homes.containsKey(homeName)) {
+        Map<String, Home> homes = getHomes(player);
+        if (homes == null) {
+            return 0;
+        }
+        if (!homes.containsKey(homeName)) {
             player.sendSystemMessage(ModConfigs.translateWithFallback(
                     "command.tpatool.home.not_found", "Home %s not found!", homeName
             ));
@@ -734,12 +1231,7 @@ public class HomeHandler {
         }
 
         // 移除公开家园信息
-        ownerPublicHomes.remove(homeName);
-        if (ownerPublicHomes.isEmpty()) {
-            publicHomesByOwner.remove(player.getUUID().toString());
-        }
-
-        saveHomes();
+        commitOperation(HomeOperation.privatize(player.getUUID(), homeName));
         player.sendSystemMessage(ModConfigs.translateWithFallback(
                 "command.tpatool.home.privatized", "Home %s is no longer public.", homeName
         ));
@@ -759,37 +1251,35 @@ public class HomeHandler {
             String ownerName = parts[0];
             String homeName = parts[1];
 
-            Optional<GameProfile> profile = player.getServer().getProfileCache().get(ownerName);
-            if (profile.isEmpty()) {
+            Optional<UUID> owner = PlayerNameCache.findUUID(ownerName);
+            if (owner.isEmpty()) {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
                         "command.tpatool.home.other_not_found", "Home %s not found or not accessible!", homeArg
                 ));
                 return 0;
             }
-            UUID ownerUUID = profile.get().getId();
+            UUID ownerUUID = owner.get();
 
-            // 检查是否是公开家园
+            // 检查是否是公开家园（坐标保存在常驻索引中，不需要加载所有者的分片）
             Map<String, PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(ownerUUID.toString());
-            boolean isPublic = ownerPublicHomes != null && ownerPublicHomes.containsKey(homeName);
+            PublicHomeInfo publicInfo = ownerPublicHomes != null ? ownerPublicHomes.get(homeName) : null;
+            Home.Position position = publicInfo != null ? publicInfo.position : null;
 
             // 检查是否是分享的家园
-            Map<String, Home> homes = playerHomes.get(ownerUUID);
-            if (homes == null || !homes.containsKey(homeName)) {
-                player.sendSystemMessage(ModConfigs.translateWithFallback(
-                        "command.tpatool.home.other_not_found", "Home %s not found or not accessible!", homeArg
-                ));
-                return 0;
+            if (position == null) {
+                if (isSharedWith(ownerUUID, homeName, player.getUUID())) {
+                    position = sharedHomesByOwner.get(ownerUUID).get(homeName).position;
+                }
             }
-            Home home = homes.get(homeName);
 
-            if (!isPublic && !home.sharedPlayers.contains(player.getUUID())) {
+            if (position == null) {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
                         "command.tpatool.home.other_not_found", "Home %s not found or not accessible!", homeArg
                 ));
                 return 0;
             }
 
-            ResourceKey<Level> dimensionKey = ResourceKey.create(Registries.DIMENSION, home.position.dimension);
+            ResourceKey<Level> dimensionKey = ResourceKey.create(Registries.DIMENSION, position.dimension);
             ServerLevel targetLevel = player.getServer().getLevel(dimensionKey);
             if (targetLevel == null) {
                 player.sendSystemMessage(ModConfigs.translateWithFallback(
@@ -798,16 +1288,21 @@ public class HomeHandler {
                 return 0;
             }
 
-            recordLastPosition(player);
-            player.teleportTo(
-                    targetLevel,
-                    home.position.x, home.position.y, home.position.z,
-                    home.position.xRot, home.position.yRot
-            );
-            player.sendSystemMessage(ModConfigs.translateWithFallback(
-                    "command.tpatool.home.other_teleported", "Teleported to %s's home %s.", ownerName, homeName
-            ));
-            ModConfigs.DebugLog.info("Player {} teleported to {}'s home {}", player.getName().getString(), ownerName, homeName);
+            Home.Position destination = position;
+            TeleportWarmup.start(player, targetLevel, destination.x, destination.z, mover -> {
+                recordLastPosition(mover);
+                mover.teleportTo(
+                        targetLevel,
+                        destination.x, destination.y, destination.z,
+                        destination.xRot, destination.yRot
+                );
+                mover.sendSystemMessage(ModConfigs.translateWithFallback(
+                        "command.tpatool.home.other_teleported", "Teleported to %s's home %s.", ownerName, homeName
+                ));
+                // 记录补全时使用的规范玩家名，而不是输入的大小写
+                HomeSuggestions.recordRecentHome(mover.getUUID(), PlayerNameCache.getName(ownerUUID) + ":" + homeName);
+                ModConfigs.DebugLog.info("Player {} teleported to {}'s home {}", mover.getName().getString(), ownerName, homeName);
+            });
             return 1;
         } catch (Exception e) {
             ModConfigs.DebugLog.error("Error executing /home otherhome {}: {}", homeArg, e.getMessage());
@@ -837,23 +1332,19 @@ public class HomeHandler {
                 Map<String, PublicHomeInfo> homes = ownerEntry.getValue();
 
                 UUID ownerUUID = UUID.fromString(ownerUUIDStr);
-                String ownerName = player.getServer().getProfileCache().get(ownerUUID)
-                        .map(GameProfile::getName).orElse("Unknown");
+                String ownerName = PlayerNameCache.getName(ownerUUID);
 
                 for (Map.Entry<String, PublicHomeInfo> homeEntry : homes.entrySet()) {
                     String homeName = homeEntry.getKey();
-                    PublicHomeInfo info = homeEntry.getValue();
-
-                    Map<String, Home> ownerHomes = playerHomes.get(ownerUUID);
-                    if (ownerHomes != null && ownerHomes.containsKey(homeName)) {
-                        Home home = ownerHomes.get(homeName);
-                        String dimensionName = home.position.dimension != null
-                                ? home.position.dimension.toString()
+                    Home.Position position = homeEntry.getValue().position;
+                    if (position != null) {
+                        String dimensionName = position.dimension != null
+                                ? position.dimension.toString()
                                 : "unknown";
                         player.sendSystemMessage(Component.literal(String.format(
                                 "- %s (%s): %s (x=%.2f, y=%.2f, z=%.2f)",
                                 homeName, ownerName, dimensionName,
-                                home.position.x, home.position.y, home.position.z
+                                position.x, position.y, position.z
                         )));
                     }
                 }
@@ -0,0 +1,326 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import com.mojang.brigadier.suggestion.SuggestionProvider;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 家园补全。补全在后台线程上计算，只读取这里发布的不可变快照，不访问 HomeHandler 的可变数据。
+ * 服务端线程修改家园后标记变化的所有者和被分享的玩家，tick 结束时只重新发布变化的部分。
+ */
+public class HomeSuggestions {
+    private static final int RECENT_HOMES = 5;
+    //等待计算的补全请求上限，超出时直接返回空结果，避免刷屏的 Tab 请求堆积
+    private static final int QUEUE_SIZE = 256;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+        Thread thread = new Thread(runnable, "TPATools-Suggest-" + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //已发布的快照：所有者 -> 家园名
+    private static final Map<UUID, List<String>> ownHomes = new ConcurrentHashMap<>();
+    //所有者 -> 公开的家园名
+    private static final Map<UUID, Set<String>> publicHomes = new ConcurrentHashMap<>();
+    //所有者 -> 家园名 -> 被分享的玩家
+    private static final Map<UUID, Map<String, List<UUID>>> grantees = new ConcurrentHashMap<>();
+    //被分享的玩家 -> 所有者 -> 家园名
+    private static final Map<UUID, Map<UUID, List<String>>> sharedWith = new ConcurrentHashMap<>();
+    //玩家 -> 最近传送过的家（自己的家名或 "所有者:家园名"），新的在前
+    private static final Map<UUID, List<String>> recentHomes = new ConcurrentHashMap<>();
+    //全部公开家园 "所有者:家园名"
+    private static volatile PublicIndex publicIndex = new PublicIndex(new SuggestionIndex(List.of()), Set.of(), Map.of(), -1);
+
+    //服务端线程上尚未发布的变化
+    private static final Set<UUID> dirtyOwners = new HashSet<>();
+    private static final Set<UUID> dirtyGrantees = new HashSet<>();
+    private static boolean publicDirty;
+    private static boolean allDirty;
+
+    //ownerNames 是建立索引时使用的所有者名字，找不到名字的所有者不在其中
+    private record PublicIndex(SuggestionIndex index, Set<String> homes, Map<UUID, String> ownerNames, long nameVersion) {
+    }
+
+    private HomeSuggestions() {
+    }
+
+    //所有者的家园或公开状态有变化；公开家园索引只在该所有者的公开家园变化时重建
+    static void markOwner(UUID owner) {
+        dirtyOwners.add(owner);
+    }
+
+    //分享给该玩家的家园有变化
+    static void markGrantee(UUID grantee) {
+        dirtyGrantees.add(grantee);
+    }
+
+    //全部数据被替换（启动加载、重建索引、导入）
+    static void markAll() {
+        allDirty = true;
+    }
+
+    //服务端 tick 结束时调用，把标记过的部分复制为不可变快照
+    static void publish(Map<UUID, Map<String, HomeHandler.Home>> playerHomes,
+                        Map<String, Map<String, HomeHandler.PublicHomeInfo>> publicHomesByOwner,
+                        Map<UUID, Map<String, HomeHandler.Home>> sharedHomesByOwner,
+                        Map<UUID, Map<UUID, Set<String>>> sharedWithPlayer) {
+        if (allDirty) {
+            allDirty = false;
+            publicDirty = true;
+            ownHomes.keySet().retainAll(playerHomes.keySet());
+            publicHomes.clear();
+            grantees.clear();
+            sharedWith.clear();
+            dirtyOwners.addAll(playerHomes.keySet());
+            for (String ownerKey : publicHomesByOwner.keySet()) {
+                dirtyOwners.add(UUID.fromString(ownerKey));
+            }
+            dirtyOwners.addAll(sharedHomesByOwner.keySet());
+            dirtyGrantees.addAll(sharedWithPlayer.keySet());
+        }
+
+        for (UUID owner : dirtyOwners) {
+            Map<String, HomeHandler.Home> homes = playerHomes.get(owner);
+            putOrRemove(ownHomes, owner, homes != null ? List.copyOf(homes.keySet()) : null);
+            Map<String, HomeHandler.PublicHomeInfo> ownerPublicHomes = publicHomesByOwner.get(owner.toString());
+            Set<String> ownerPublic = ownerPublicHomes != null ? Set.copyOf(ownerPublicHomes.keySet()) : null;
+            if (!Objects.equals(ownerPublic, publicHomes.get(owner))) {
+                publicDirty = true;
+            }
+            putOrRemove(publicHomes, owner, ownerPublic);
+            Map<String, HomeHandler.Home> ownerSharedHomes = sharedHomesByOwner.get(owner);
+            Map<String, List<UUID>> ownerGrantees = null;
+            if (ownerSharedHomes != null) {
+                ownerGrantees = new HashMap<>();
+                for (Map.Entry<String, HomeHandler.Home> entry : ownerSharedHomes.entrySet()) {
+                    ownerGrantees.put(entry.getKey(), List.copyOf(entry.getValue().sharedPlayers));
+                }
+                ownerGrantees = Map.copyOf(ownerGrantees);
+            }
+            putOrRemove(grantees, owner, ownerGrantees);
+        }
+        dirtyOwners.clear();
+
+        for (UUID grantee : dirtyGrantees) {
+            Map<UUID, Set<String>> owners = sharedWithPlayer.get(grantee);
+            Map<UUID, List<String>> copy = null;
+            if (owners != null) {
+                copy = new HashMap<>();
+                for (Map.Entry<UUID, Set<String>> entry : owners.entrySet()) {
+                    copy.put(entry.getKey(), List.copyOf(entry.getValue()));
+                }
+                copy = Map.copyOf(copy);
+            }
+            putOrRemove(sharedWith, grantee, copy);
+        }
+        dirtyGrantees.clear();
+
+        // 公开家园索引按玩家名排序，有公开家园的所有者改名时也要重建
+        long nameVersion = PlayerNameCache.getVersion();
+        PublicIndex index = publicIndex;
+        if (!publicDirty && index.nameVersion() != nameVersion) {
+            if (ownerNamesChanged(index.ownerNames())) {
+                publicDirty = true;
+            } else {
+                publicIndex = new PublicIndex(index.index(), index.homes(), index.ownerNames(), nameVersion);
+            }
+        }
+        if (publicDirty) {
+            publicDirty = false;
+            List<String> candidates = new ArrayList<>();
+            Map<UUID, String> ownerNames = new HashMap<>();
+            for (Map.Entry<UUID, Set<String>> ownerEntry : publicHomes.entrySet()) {
+                // 找不到玩家名时无法输入 "所有者:家园名"，与 OTHER_HOMES 一样跳过
+                Optional<String> ownerName = PlayerNameCache.findName(ownerEntry.getKey());
+                if (ownerName.isEmpty()) {
+                    continue;
+                }
+                ownerNames.put(ownerEntry.getKey(), ownerName.get());
+                for (String homeName : ownerEntry.getValue()) {
+                    candidates.add(ownerName.get() + ":" + homeName);
+                }
+            }
+            publicIndex = new PublicIndex(new SuggestionIndex(candidates), Set.copyOf(candidates), Map.copyOf(ownerNames), nameVersion);
+        }
+    }
+
+    //只比较有公开家园的所有者，其他玩家首次登录不会触发重建
+    private static boolean ownerNamesChanged(Map<UUID, String> indexedNames) {
+        for (UUID owner : publicHomes.keySet()) {
+            if (!Objects.equals(indexedNames.get(owner), PlayerNameCache.findName(owner).orElse(null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <K, V> void putOrRemove(Map<K, V> map, K key, V value) {
+        if (value != null) {
+            map.put(key, value);
+        } else {
+            map.remove(key);
+        }
+    }
+
+    //清空全部快照（服务器启动时）
+    static void clear() {
+        ownHomes.clear();
+        publicHomes.clear();
+        grantees.clear();
+        sharedWith.clear();
+        recentHomes.clear();
+        dirtyOwners.clear();
+        dirtyGrantees.clear();
+        publicIndex = new PublicIndex(new SuggestionIndex(List.of()), Set.of(), Map.of(), -1);
+        allDirty = true;
+    }
+
+    static void recordRecentHome(UUID player, String home) {
+        recentHomes.compute(player, (key, recent) -> {
+            List<String> updated = new ArrayList<>(RECENT_HOMES);
+            updated.add(home);
+            if (recent != null) {
+                for (String previous : recent) {
+                    if (updated.size() >= RECENT_HOMES) {
+                        break;
+                    }
+                    if (!previous.equals(home)) {
+                        updated.add(previous);
+                    }
+                }
+            }
+            return List.copyOf(updated);
+        });
+    }
+
+    static void forgetRecentHomes(UUID player) {
+        recentHomes.remove(player);
+    }
+
+    //在补全线程上收集结果；队列已满时返回空结果
+    private static CompletableFuture<Suggestions> suggestAsync(SuggestionsBuilder builder, Consumer<SuggestionIndex.Collector> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                SuggestionIndex.Collector collector = new SuggestionIndex.Collector(builder);
+                task.accept(collector);
+                return collector.build(builder).join();
+            }, EXECUTOR);
+        } catch (RejectedExecutionException e) {
+            ModConfigs.DebugLog.info("Suggestion queue is full, dropping request");
+            return Suggestions.empty();
+        }
+    }
+
+    //自己的家：最近使用过的优先
+    private static void addOwnHomes(SuggestionIndex.Collector collector, UUID player, Collection<String> homeNames) {
+        for (String home : recentHomes.getOrDefault(player, List.of())) {
+            if (homeNames.contains(home)) {
+                collector.add(home);
+            }
+        }
+        collector.addAll(homeNames);
+    }
+
+    // Tab补全：玩家自己的家
+    static final SuggestionProvider<CommandSourceStack> OWN_HOMES = (context, builder) -> {
+        ServerPlayer player = context.getSource().getPlayer();
+        if (player == null) {
+            return builder.buildFuture();
+        }
+        UUID uuid = player.getUUID();
+        return suggestAsync(builder, collector -> addOwnHomes(collector, uuid, Set.copyOf(ownHomes.getOrDefault(uuid, List.of()))));
+    };
+
+    // Tab补全：公开的家
+    static final SuggestionProvider<CommandSourceStack> PUBLIC_HOMES = (context, builder) -> {
+        ServerPlayer player = context.getSource().getPlayer();
+        if (player == null) {
+            return builder.buildFuture();
+        }
+        UUID uuid = player.getUUID();
+        return suggestAsync(builder, collector -> addOwnHomes(collector, uuid, publicHomes.getOrDefault(uuid, Set.of())));
+    };
+
+    // Tab补全：非公开的家
+    static final SuggestionProvider<CommandSourceStack> NON_PUBLIC_HOMES = (context, builder) -> {
+        ServerPlayer player = context.getSource().getPlayer();
+        if (player == null) {
+            return builder.buildFuture();
+        }
+        UUID uuid = player.getUUID();
+        return suggestAsync(builder, collector -> {
+            Set<String> ownerPublicHomes = publicHomes.getOrDefault(uuid, Set.of());
+            Set<String> nonPublic = new HashSet<>();
+            for (String homeName : ownHomes.getOrDefault(uuid, List.of())) {
+                if (!ownerPublicHomes.contains(homeName)) {
+                    nonPublic.add(homeName);
+                }
+            }
+            addOwnHomes(collector, uuid, nonPublic);
+        });
+    };
+
+    // Tab补全：/home otherhome 的 playername:homename
+    // 依次加入最近使用过的、分享给自己的和全部公开家园
+    static final SuggestionProvider<CommandSourceStack> OTHER_HOMES = (context, builder) -> {
+        ServerPlayer player = context.getSource().getPlayer();
+        if (player == null) {
+            return builder.buildFuture();
+        }
+        UUID uuid = player.getUUID();
+        return suggestAsync(builder, collector -> {
+            Set<String> shared = new HashSet<>();
+            for (Map.Entry<UUID, List<String>> entry : sharedWith.getOrDefault(uuid, Map.of()).entrySet()) {
+                if (entry.getKey().equals(uuid)) {
+                    continue;
+                }
+                Optional<String> ownerName = PlayerNameCache.findName(entry.getKey());
+                if (ownerName.isEmpty()) {
+                    continue;
+                }
+                for (String homeName : entry.getValue()) {
+                    shared.add(ownerName.get() + ":" + homeName);
+                }
+            }
+            PublicIndex index = publicIndex;
+            // 最近使用过的家仍可访问时优先
+            for (String home : recentHomes.getOrDefault(uuid, List.of())) {
+                if (shared.contains(home) || index.homes().contains(home)) {
+                    collector.add(home);
+                }
+            }
+            collector.addAll(shared);
+            collector.addAll(index.index());
+        });
+    };
+
+    // Tab 补全：/home unshare 的玩家名，只补全这个家已分享给的玩家（支持离线玩家）
+    static SuggestionProvider<CommandSourceStack> grantees(String homeArgument) {
+        return (context, builder) -> {
+            ServerPlayer player = context.getSource().getPlayer();
+            if (player == null) {
+                return builder.buildFuture();
+            }
+            UUID uuid = player.getUUID();
+            String homeName = context.getArgument(homeArgument, String.class);
+            return suggestAsync(builder, collector -> {
+                List<String> names = new ArrayList<>();
+                for (UUID grantee : grantees.getOrDefault(uuid, Map.of()).getOrDefault(homeName, List.of())) {
+                    PlayerNameCache.findName(grantee).ifPresent(names::add);
+                }
+                collector.addAll(names);
+            });
+        };
+    }
+}
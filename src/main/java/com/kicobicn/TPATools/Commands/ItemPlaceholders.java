@@ -0,0 +1,165 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * 聊天中的物品占位符：
+ * &1 到 &9 快捷栏，&hand 主手，&offhand 副手，&head &chest &legs &feet 盔甲，&inv 背包概览。
+ * 物品组件按 (玩家, 槽位) 缓存，槽位中的物品对象或内容变化时重建。
+ */
+public class ItemPlaceholders {
+    //悬停显示的背包概览最多列出的物品种类
+    private static final int SUMMARY_LINES = 10;
+    //Inventory 的槽位：0-35 背包（0-8 快捷栏），36-39 盔甲（脚到头），40 副手
+    private static final int SLOT_COUNT = 41;
+
+    private record Placeholder(String token, ToIntFunction<ServerPlayer> slot) {
+    }
+
+    //单词占位符后面不能紧跟字母或数字，例如 &handle 不会被识别
+    private static final List<Placeholder> WORD_PLACEHOLDERS = List.of(
+            new Placeholder("hand", player -> player.getInventory().selected),
+            new Placeholder("offhand", player -> 40),
+            new Placeholder("head", player -> 39),
+            new Placeholder("chest", player -> 38),
+            new Placeholder("legs", player -> 37),
+            new Placeholder("feet", player -> 36)
+    );
+    private static final String SUMMARY_TOKEN = "inv";
+
+    private static final Map<UUID, CachedItem[]> cache = new ConcurrentHashMap<>();
+
+    //source 是槽位中的物品对象，snapshot 是生成组件时的副本，用于判断内容是否变化
+    private record CachedItem(ItemStack source, ItemStack snapshot, MutableComponent component) {
+    }
+
+    //占位符的长度（包括 &）和生成的组件
+    public record Match(int length, MutableComponent component) {
+    }
+
+    /**
+     * 识别 message 中 index 处（'&'）开始的占位符。
+     * 不是占位符或槽位为空时返回 null，原文本保留。
+     */
+    public static Match find(String message, int index, ServerPlayer player) {
+        int start = index + 1;
+        if (start >= message.length()) {
+            return null;
+        }
+        char first = message.charAt(start);
+        if (first >= '1' && first <= '9') {
+            int slot = first - '1'; // 转换为0-8的索引
+            return item(player, slot, 2, "&" + first);
+        }
+        for (Placeholder placeholder : WORD_PLACEHOLDERS) {
+            if (matchesWord(message, start, placeholder.token())) {
+                return item(player, placeholder.slot().applyAsInt(player), placeholder.token().length() + 1, "&" + placeholder.token());
+            }
+        }
+        if (matchesWord(message, start, SUMMARY_TOKEN)) {
+            return new Match(SUMMARY_TOKEN.length() + 1, createSummaryComponent(player.getInventory()));
+        }
+        return null;
+    }
+
+    private static boolean matchesWord(String message, int start, String token) {
+        if (!message.regionMatches(true, start, token, 0, token.length())) {
+            return false;
+        }
+        int end = start + token.length();
+        return end >= message.length() || !Character.isLetterOrDigit(message.charAt(end));
+    }
+
+    private static Match item(ServerPlayer player, int slot, int length, String token) {
+        ItemStack itemStack = player.getInventory().getItem(slot);
+        if (itemStack.isEmpty()) {
+            // 槽位为空，保留原文本
+            ModConfigs.DebugLog.info("Slot for {} is empty, keeping original text", token);
+            return null;
+        }
+        ModConfigs.DebugLog.info("Replaced {} with item: {}", token, itemStack.getHoverName().getString());
+        return new Match(length, getItemComponent(player, slot, itemStack));
+    }
+
+    //同一槽位中仍是同一个物品对象且内容（数量、耐久、名称等）未变时复用组件
+    private static MutableComponent getItemComponent(ServerPlayer player, int slot, ItemStack itemStack) {
+        CachedItem[] items = cache.computeIfAbsent(player.getUUID(), uuid -> new CachedItem[SLOT_COUNT]);
+        CachedItem cached = items[slot];
+        if (cached != null && cached.source() == itemStack && ItemStack.matches(cached.snapshot(), itemStack)) {
+            return cached.component();
+        }
+        ItemStack snapshot = itemStack.copy();
+        MutableComponent component = createItemComponent(snapshot);
+        items[slot] = new CachedItem(itemStack, snapshot, component);
+        return component;
+    }
+
+    //展示物品组件，悬停显示完整的物品提示
+    private static MutableComponent createItemComponent(ItemStack itemStack) {
+        // 获取物品原有的显示名称和颜色（保持其原始样式）
+        MutableComponent itemDisplayName = itemStack.getDisplayName().copy();
+
+        // 构建组件：外括号为金色，物品名称为其原始颜色
+        return Component.literal("[") // 左外括号，金色
+                .withStyle(style -> style.withColor(ChatFormatting.GOLD)
+                        .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_ITEM, new HoverEvent.ItemStackInfo(itemStack))))
+                .append(itemDisplayName) // 物品名称，保持原色
+                .append(Component.literal("]").withStyle(ChatFormatting.GOLD));
+    }
+
+    //背包概览：已用格数，悬停列出数量最多的几种物品
+    private static MutableComponent createSummaryComponent(Inventory inventory) {
+        Map<Item, Integer> counts = new HashMap<>();
+        int used = 0;
+        for (int slot = 0; slot < inventory.items.size(); slot++) {
+            ItemStack itemStack = inventory.items.get(slot);
+            if (!itemStack.isEmpty()) {
+                used++;
+                counts.merge(itemStack.getItem(), itemStack.getCount(), Integer::sum);
+            }
+        }
+        List<Map.Entry<Item, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Item, Integer>comparingByValue().reversed());
+
+        MutableComponent hover = Component.literal("");
+        for (int i = 0; i < Math.min(SUMMARY_LINES, entries.size()); i++) {
+            if (i > 0) {
+                hover.append("\n");
+            }
+            hover.append(entries.get(i).getKey().getDescription().copy())
+                    .append(Component.literal(" x" + entries.get(i).getValue()).withStyle(ChatFormatting.GRAY));
+        }
+        if (entries.size() > SUMMARY_LINES) {
+            hover.append("\n").append(ModConfigs.translateWithFallback(
+                    "command.tpatool.chat.inventory_more", "...and %d more", entries.size() - SUMMARY_LINES
+            ).withStyle(ChatFormatting.GRAY));
+        }
+
+        return Component.literal("[")
+                .append(ModConfigs.translateWithFallback(
+                        "command.tpatool.chat.inventory", "Inventory %d/%d", used, inventory.items.size()
+                ))
+                .append("]")
+                .withStyle(style -> style.withColor(ChatFormatting.GOLD)
+                        .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, hover)));
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        cache.remove(event.getEntity().getUUID());
+    }
+}
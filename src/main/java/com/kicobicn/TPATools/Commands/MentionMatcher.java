@@ -0,0 +1,172 @@
+package com.kicobicn.TPATools.Commands;
+
+import java.util.*;
+
+/**
+ * 在线玩家名的 Aho-Corasick 自动机，不区分大小写。
+ * 对消息只扫描一遍就能找出所有被提到的玩家；重叠时取最靠前、最长的名字。
+ * 创建后不再修改，玩家登录或退出时整体重建，可以在任意线程读取。
+ */
+public class MentionMatcher {
+    public static final MentionMatcher EMPTY = new MentionMatcher(Map.of());
+
+    //消息中 [start, end) 是玩家 name 的名字
+    public record Mention(int start, int end, UUID player, String name) {
+    }
+
+    private final UUID[] players;
+    private final String[] names;
+
+    //节点的子节点：按字符排序的 keys 与对应的 targets，节点 0 为根
+    private final char[][] keys;
+    private final int[][] targets;
+    //失配时跳转的节点
+    private final int[] fail;
+    //以该节点结尾的名字下标，没有时为 -1
+    private final int[] output;
+    //沿失配链能找到的下一个有名字的节点，没有时为 0
+    private final int[] dictLink;
+
+    public MentionMatcher(Map<UUID, String> onlineNames) {
+        UUID[] players = new UUID[onlineNames.size()];
+        String[] names = new String[onlineNames.size()];
+
+        // 先用 Map 建字典树，再转成数组
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        children.add(new HashMap<>());
+        outputs.add(-1);
+        int count = 0;
+        for (Map.Entry<UUID, String> entry : onlineNames.entrySet()) {
+            String name = entry.getValue();
+            if (name == null || name.isEmpty()) {
+                continue;
+            }
+            players[count] = entry.getKey();
+            names[count] = name;
+            int node = 0;
+            for (int i = 0; i < name.length(); i++) {
+                char c = Character.toLowerCase(name.charAt(i));
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(c, next);
+                    children.add(new HashMap<>());
+                    outputs.add(-1);
+                }
+                node = next;
+            }
+            outputs.set(node, count);
+            count++;
+        }
+        this.players = Arrays.copyOf(players, count);
+        this.names = Arrays.copyOf(names, count);
+
+        int size = children.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        this.output = new int[size];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> map = children.get(node);
+            char[] nodeKeys = new char[map.size()];
+            int i = 0;
+            for (char c : map.keySet()) {
+                nodeKeys[i++] = c;
+            }
+            Arrays.sort(nodeKeys);
+            int[] nodeTargets = new int[nodeKeys.length];
+            for (i = 0; i < nodeKeys.length; i++) {
+                nodeTargets[i] = map.get(nodeKeys[i]);
+            }
+            keys[node] = nodeKeys;
+            targets[node] = nodeTargets;
+            output[node] = outputs.get(node);
+        }
+
+        // 按层次计算失配链，父节点总是先于子节点处理
+        this.fail = new int[size];
+        this.dictLink = new int[size];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < keys[node].length; i++) {
+                char c = keys[node][i];
+                int child = targets[node][i];
+                fail[child] = step(fail[node], c);
+                int f = fail[child];
+                dictLink[child] = output[f] >= 0 ? f : dictLink[f];
+                queue.add(child);
+            }
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    private int child(int node, char c) {
+        int index = Arrays.binarySearch(keys[node], c);
+        return index >= 0 ? targets[node][index] : -1;
+    }
+
+    //从 node 读入字符 c 后到达的节点
+    private int step(int node, char c) {
+        while (true) {
+            int next = child(node, c);
+            if (next >= 0) {
+                return next;
+            }
+            if (node == 0) {
+                return 0;
+            }
+            node = fail[node];
+        }
+    }
+
+    /**
+     * 找出消息中提到的所有玩家，按位置排序，互不重叠。
+     */
+    public List<Mention> find(String message) {
+        if (names.length == 0 || message.isEmpty()) {
+            return List.of();
+        }
+        // 每个起点上最长的名字
+        int[] longestAt = null;
+        int node = 0;
+        for (int i = 0; i < message.length(); i++) {
+            node = step(node, Character.toLowerCase(message.charAt(i)));
+            int match = output[node] >= 0 ? node : dictLink[node];
+            while (match != 0) {
+                int name = output[match];
+                int start = i + 1 - names[name].length();
+                if (longestAt == null) {
+                    longestAt = new int[message.length()];
+                    Arrays.fill(longestAt, -1);
+                }
+                if (longestAt[start] < 0 || names[longestAt[start]].length() < names[name].length()) {
+                    longestAt[start] = name;
+                }
+                match = dictLink[match];
+            }
+        }
+        if (longestAt == null) {
+            return List.of();
+        }
+        List<Mention> mentions = new ArrayList<>();
+        int i = 0;
+        while (i < longestAt.length) {
+            int name = longestAt[i];
+            if (name < 0) {
+                i++;
+                continue;
+            }
+            int end = i + names[name].length();
+            mentions.add(new Mention(i, end, players[name], names[name]));
+            i = end;
+        }
+        return mentions;
+    }
+}
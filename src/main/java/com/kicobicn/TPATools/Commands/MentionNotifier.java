@@ -0,0 +1,113 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.game.ClientboundSetTitleTextPacket;
+import net.minecraft.network.protocol.game.ClientboundSetTitlesAnimationPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.sounds.SoundEvents;
+import net.minecraft.sounds.SoundSource;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import java.util.*;
+
+/**
+ * 提到玩家的提示（标题和音效）。聊天时只记录，由服务端 tick 发送；
+ * 每个玩家在 mention_window_ticks 内最多收到一次提示，期间的多次提到合并为一条。
+ */
+public class MentionNotifier {
+    //每次提示发送的数据包：标题时间、标题文本、音效
+    private static final int PACKETS_PER_NOTIFICATION = 3;
+
+    private static final Map<UUID, Target> targets = new HashMap<>();
+    private static long currentTick;
+
+    private static long notificationsSent;
+    private static long packetsSuppressed;
+
+    private static class Target {
+        //下一次可以发送提示的 tick
+        long nextTick;
+        //窗口内提到该玩家的人，按先后顺序
+        final Set<String> senders = new LinkedHashSet<>();
+        int mentions;
+    }
+
+    //记录一次提到，可以在聊天线程调用
+    public static synchronized void record(ServerPlayer target, ServerPlayer sender) {
+        Target state = targets.computeIfAbsent(target.getUUID(), uuid -> new Target());
+        state.senders.add(sender.getName().getString());
+        state.mentions++;
+    }
+
+    public static synchronized void tick() {
+        currentTick++;
+        if (targets.isEmpty()) {
+            return;
+        }
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        Iterator<Map.Entry<UUID, Target>> iterator = targets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Target> entry = iterator.next();
+            Target state = entry.getValue();
+            if (currentTick < state.nextTick) {
+                continue;
+            }
+            if (state.mentions == 0) {
+                // 窗口已过且没有新的提到
+                iterator.remove();
+                continue;
+            }
+            ServerPlayer target = server != null ? server.getPlayerList().getPlayer(entry.getKey()) : null;
+            if (target == null) {
+                iterator.remove();
+                continue;
+            }
+            send(target, state.senders);
+            notificationsSent++;
+            packetsSuppressed += (long) (state.mentions - 1) * PACKETS_PER_NOTIFICATION;
+            state.senders.clear();
+            state.mentions = 0;
+            state.nextTick = currentTick + ModConfigs.MENTION_WINDOW_TICKS.get();
+        }
+    }
+
+    private static void send(ServerPlayer target, Set<String> senders) {
+        Component title = senders.size() == 1
+                ? ModConfigs.translateWithFallback(
+                        "command.tpatool.chat.mention", "%s mentioned you", senders.iterator().next()
+                ).withStyle(ChatFormatting.AQUA)
+                : ModConfigs.translateWithFallback(
+                        "command.tpatool.chat.mention_multiple", "%d players mentioned you", senders.size()
+                ).withStyle(ChatFormatting.AQUA);
+        // 使用 Title 数据包来实现居中大标题提示的效果
+        ClientboundSetTitleTextPacket titlePacket = new ClientboundSetTitleTextPacket(title);
+        // 设置标题显示时间、淡入淡出时间
+        ClientboundSetTitlesAnimationPacket timesPacket =
+                new ClientboundSetTitlesAnimationPacket(10, 40, 10);
+        target.connection.send(timesPacket);
+        target.connection.send(titlePacket);
+
+        // 播放音效
+        target.playNotifySound(SoundEvents.NOTE_BLOCK_PLING.value(), SoundSource.PLAYERS, 1.0F, 1.0F);
+    }
+
+    @SubscribeEvent
+    public static synchronized void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        targets.remove(event.getEntity().getUUID());
+    }
+
+    //已发送的提示次数
+    public static synchronized long getNotificationsSent() {
+        return notificationsSent;
+    }
+
+    //合并后少发送的数据包数量
+    public static synchronized long getPacketsSuppressed() {
+        return packetsSuppressed;
+    }
+}
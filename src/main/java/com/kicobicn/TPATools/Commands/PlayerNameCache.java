@@ -0,0 +1,89 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TPATools 自己的 UUID 与玩家名双向缓存。
+ * 登录时和加载家园数据时写入，读取不加锁，可以在任意线程调用；
+ * 未命中时才查询一次原版的 GameProfileCache（usercache.json）并记住结果。
+ */
+public class PlayerNameCache {
+    public static final String UNKNOWN = "Unknown";
+
+    private static final Map<UUID, String> namesById = new ConcurrentHashMap<>();
+    //键为小写玩家名，与原版一样不区分大小写
+    private static final Map<String, UUID> idsByName = new ConcurrentHashMap<>();
+    //名称变化时递增，依赖玩家名的缓存据此判断是否需要重建
+    private static final AtomicLong version = new AtomicLong();
+
+    //记录玩家名；玩家改名后旧名字不再指向该玩家
+    public static void remember(UUID uuid, String name) {
+        if (uuid == null || name == null) {
+            return;
+        }
+        String oldName = namesById.put(uuid, name);
+        if (name.equals(oldName)) {
+            return;
+        }
+        if (oldName != null && !oldName.equalsIgnoreCase(name)) {
+            idsByName.remove(oldName.toLowerCase(Locale.ROOT), uuid);
+        }
+        idsByName.put(name.toLowerCase(Locale.ROOT), uuid);
+        version.incrementAndGet();
+    }
+
+    public static long getVersion() {
+        return version.get();
+    }
+
+    public static Optional<String> findName(UUID uuid) {
+        String name = namesById.get(uuid);
+        if (name != null) {
+            return Optional.of(name);
+        }
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null || server.getProfileCache() == null) {
+            return Optional.empty();
+        }
+        Optional<GameProfile> profile = server.getProfileCache().get(uuid);
+        profile.ifPresent(found -> remember(found.getId(), found.getName()));
+        return profile.map(GameProfile::getName);
+    }
+
+    //找不到时返回 "Unknown"
+    public static String getName(UUID uuid) {
+        return findName(uuid).orElse(UNKNOWN);
+    }
+
+    public static Optional<UUID> findUUID(String name) {
+        UUID uuid = idsByName.get(name.toLowerCase(Locale.ROOT));
+        if (uuid != null) {
+            return Optional.of(uuid);
+        }
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server == null || server.getProfileCache() == null) {
+            return Optional.empty();
+        }
+        Optional<GameProfile> profile = server.getProfileCache().get(name);
+        profile.ifPresent(found -> remember(found.getId(), found.getName()));
+        return profile.map(GameProfile::getId);
+    }
+
+    //登录时更新，玩家改名后立即生效
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        GameProfile profile = event.getEntity().getGameProfile();
+        remember(profile.getId(), profile.getName());
+    }
+}
@@ -0,0 +1,113 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 按小写排序的候选数组，用二分查找定位前缀，只取出匹配的部分。
+ * 创建后不再修改，数据变化时整体重建。
+ */
+public class SuggestionIndex {
+    private final String[] values;
+    private final String[] lowerValues;
+
+    public SuggestionIndex(Collection<String> candidates) {
+        String[] sorted = candidates.toArray(new String[0]);
+        // 与 lowerBound 使用同一种比较方式
+        Arrays.sort(sorted, Comparator.comparing(value -> value.toLowerCase(Locale.ROOT)));
+        this.values = sorted;
+        this.lowerValues = new String[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            lowerValues[i] = sorted[i].toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    //第一个不小于 prefix 的位置
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = lowerValues.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lowerValues[mid].compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 收集补全结果：按调用顺序分组加入，先加入的排在前面，达到 suggestion_limit 后忽略其余候选。
+     * 客户端会按字母顺序显示，排序只决定哪些候选能进入结果。
+     */
+    public static class Collector {
+        private final String prefix;
+        private final int limit;
+        private final Set<String> results = new LinkedHashSet<>();
+
+        public Collector(SuggestionsBuilder builder) {
+            this.prefix = builder.getRemainingLowerCase();
+            this.limit = ModConfigs.SUGGESTION_LIMIT.get();
+        }
+
+        public boolean isFull() {
+            return results.size() >= limit;
+        }
+
+        //逐个检查的少量候选（一个玩家的家园、最近使用记录）
+        public Collector add(String candidate) {
+            if (!isFull() && candidate.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                results.add(candidate);
+            }
+            return this;
+        }
+
+        //少量候选：过滤后按字母顺序加入
+        public Collector addAll(Collection<String> candidates) {
+            if (isFull()) {
+                return this;
+            }
+            List<String> matches = new ArrayList<>();
+            for (String candidate : candidates) {
+                if (candidate.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+                    matches.add(candidate);
+                }
+            }
+            matches.sort(String.CASE_INSENSITIVE_ORDER);
+            for (String match : matches) {
+                if (isFull()) {
+                    break;
+                }
+                results.add(match);
+            }
+            return this;
+        }
+
+        //大量候选：在排序数组中二分定位前缀，只遍历匹配的部分
+        public Collector addAll(SuggestionIndex index) {
+            for (int i = index.lowerBound(prefix); i < index.lowerValues.length && !isFull(); i++) {
+                if (!index.lowerValues[i].startsWith(prefix)) {
+                    break;
+                }
+                results.add(index.values[i]);
+            }
+            return this;
+        }
+
+        public CompletableFuture<Suggestions> build(SuggestionsBuilder builder) {
+            for (String result : results) {
+                builder.suggest(result);
+            }
+            return builder.buildFuture();
+        }
+    }
+}
@@ -1,181 +1,211 @@
 package com.kicobicn.TPATools.Commands;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.commands.arguments.EntityArgument;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
 import com.kicobicn.TPATools.config.ModConfigs;
+import com.kicobicn.TPATools.storage.MapStore;
+import com.kicobicn.TPATools.storage.StartupLoader;
+import com.kicobicn.TPATools.storage.Storage;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
 
 import static com.kicobicn.TPATools.config.ModConfigs.*;
 
 public class TPAHandler {
-    private static final Map<UUID, List<TPARequest>> requests = new HashMap<>();
-    private static final Map<UUID, Long> cooldowns = new HashMap<>();
-    private static final Map<UUID, Boolean> toggleStates = new HashMap<>();
-    private static final Map<UUID, Set<UUID>> lockedPlayers = new HashMap<>();
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
-
+    //目标 -> 发送者 -> 请求，按发送顺序排列；同一发送者重复发送时替换旧请求
+    private static final Map<UUID, LinkedHashMap<UUID, TPARequest>> requests = new HashMap<>();
+    //玩家 -> TPA 状态；状态全部为默认值时移除，只保留有冷却、免打扰、锁定或发出请求的玩家
+    private static final Map<UUID, PlayerState> playerStates = new HashMap<>();
+    //冷却按发送顺序排队，到期后由 tick 清理
+    private static final ArrayDeque<Cooldown> cooldownQueue = new ArrayDeque<>();
+    //修改后把该玩家的值通知存储，由存储后端合并写入
+    private static MapStore<UUID, Boolean> toggleStore;
+    private static MapStore<UUID, Set<UUID>> lockStore;
+    private static MapStore<String, Boolean> permissionStore;
+
+    //按过期 tick 排序的请求；被接受、拒绝、取消或替换的请求不从堆中删除，到期时发现已不在 requests 中就跳过
+    private static final PriorityQueue<TPARequest> expiryQueue = new PriorityQueue<>(Comparator.comparingLong(request -> request.expiryTick));
+    //服务端 tick 计数，超时按 tick 计算，服务器卡顿时不会提前过期
+    private static long currentTick;
+
+    //只保存 UUID 和名字，不持有玩家实体；需要时再按 UUID 查找在线玩家
     public static class TPARequest {
-        public final ServerPlayer sender;
-        public final ServerPlayer target;
+        public final UUID senderId;
+        public final UUID targetId;
+        public final String senderName;
+        public final String targetName;
         public final boolean isTPHere;
-        public final long timestamp;
+        public final long expiryTick;
 
-        public TPARequest(ServerPlayer sender, ServerPlayer target, boolean isTPHere) {
-            this.sender = sender;
-            this.target = target;
+        public TPARequest(ServerPlayer sender, ServerPlayer target, boolean isTPHere, long expiryTick) {
+            this.senderId = sender.getUUID();
+            this.targetId = target.getUUID();
+            this.senderName = sender.getName().getString();
+            this.targetName = target.getName().getString();
             this.isTPHere = isTPHere;
-            this.timestamp = System.currentTimeMillis();
+            this.expiryTick = expiryTick;
+        }
+    }
+
+    //一个玩家的冷却、免打扰、锁定列表和发出的请求，一次查找即可取得
+    private static class PlayerState {
+        //冷却结束的时间（毫秒），0 表示没有冷却
+        long cooldownUntil;
+        boolean toggledOff;
+        //不可变集合，修改时整体替换，可以直接交给存储
+        Set<UUID> locked = Set.of();
+        //发出的请求的目标
+        final Set<UUID> outgoing = new HashSet<>();
+
+        boolean isEmpty() {
+            return cooldownUntil == 0 && !toggledOff && locked.isEmpty() && outgoing.isEmpty();
+        }
+    }
+
+    private record Cooldown(UUID player, long until) {
+    }
+
+    private static PlayerState getState(UUID player) {
+        return playerStates.computeIfAbsent(player, k -> new PlayerState());
+    }
+
+    private static void releaseState(UUID player, PlayerState state) {
+        if (state.isEmpty()) {
+            playerStates.remove(player);
         }
     }
 
+    private static Map<UUID, Boolean> snapshotToggles() {
+        Map<UUID, Boolean> toggles = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> entry : playerStates.entrySet()) {
+            if (entry.getValue().toggledOff) {
+                toggles.put(entry.getKey(), true);
+            }
+        }
+        return toggles;
+    }
+
+    private static Map<UUID, Set<UUID>> snapshotLocks() {
+        Map<UUID, Set<UUID>> locks = new HashMap<>();
+        for (Map.Entry<UUID, PlayerState> entry : playerStates.entrySet()) {
+            if (!entry.getValue().locked.isEmpty()) {
+                locks.put(entry.getKey(), entry.getValue().locked);
+            }
+        }
+        return locks;
+    }
+
+    //各个存储在后台并行读取，全部完成（或超时）后才继续启动
     @SubscribeEvent
     public static void onServerStarting(ServerStartingEvent event) {
-        loadTranslations(DEFAULT_LANGUAGE.get());
-        HomeHandler.loadHomes();
-        GraveHandler.loadGraves();
-        loadToggleStates();
-        loadLockedPlayers();
-        loadCommandPermissions();
+        requests.clear();
+        playerStates.clear();
+        cooldownQueue.clear();
+        expiryQueue.clear();
+        currentTick = 0;
+        Storage.open();
+        StartupLoader loader = new StartupLoader();
+        String language = DEFAULT_LANGUAGE.get();
+        loader.add("translations", () -> readTranslations(language), ModConfigs::setTranslations);
+        HomeHandler.loadHomes(loader);
+        GraveHandler.loadGraves(loader);
+        loadToggleStates(loader);
+        loadLockedPlayers(loader);
+        loadCommandPermissions(loader);
+        loader.run(LOAD_TIMEOUT_SECONDS.get() * 1000L);
     }
 
     @SubscribeEvent
     public static void onServerStopping(ServerStoppingEvent event) {
         HomeHandler.saveHomes();
         GraveHandler.saveGraves();
-        saveToggleStates();
-        saveLockedPlayers();
-        saveCommandPermissions();
+        toggleStore.flush();
+        lockStore.flush();
+        permissionStore.flush();
+        Storage.close();
     }
 
     // 加载命令权限状态
-    private static void loadCommandPermissions() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool.json");
-            if (Files.exists(path)) {
-                String jsonContent = Files.readString(path);
-                Map<String, Boolean> loadedPermissions = GSON.fromJson(jsonContent, new TypeToken<Map<String, Boolean>>(){}.getType());
-                ModConfigs.commandPermissions.clear();
-                if (loadedPermissions != null) {
-                    ModConfigs.commandPermissions.putAll(loadedPermissions);
-                    ModConfigs.DebugLog.info("Loaded command permissions from {}", path.toString());
-                }
-            }
+    private static void loadCommandPermissions(StartupLoader loader) {
+        permissionStore = Storage.get().permissions(() -> ModConfigs.commandPermissions);
+        ModConfigs.commandPermissions.clear();
+        loader.add("command permissions", permissionStore::load, loaded -> {
+            ModConfigs.commandPermissions.putAll(loaded.data());
             ModConfigs.initCommandPermissions();
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to load command permissions: {}", e.getMessage());
-        }
+            if (loaded.needsRewrite() || ModConfigs.commandPermissions.size() != loaded.data().size()) {
+                // 转换格式，或写入新增命令的默认值
+                permissionStore.saveAll();
+            }
+        });
     }
 
-    // 保存命令权限状态
-    public static void saveCommandPermissions() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool.json");
-            Files.writeString(path, GSON.toJson(ModConfigs.commandPermissions));
-            ModConfigs.DebugLog.info("Saved command permissions to {}", path.toString());
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to save command permissions: {}", e.getMessage());
-        }
+    // 修改命令权限状态
+    public static void setCommandPermission(String command, boolean needOp) {
+        ModConfigs.commandPermissions.put(command, needOp);
+        permissionStore.put(command, needOp);
     }
 
     // 加载免打扰状态
-    private static void loadToggleStates() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_toggles.json");
-            if (Files.exists(path)) {
-                String jsonContent = Files.readString(path);
-                Map<UUID, Boolean> loadedToggles = GSON.fromJson(jsonContent, new TypeToken<Map<UUID, Boolean>>(){}.getType());
-                toggleStates.clear();
-                if (loadedToggles != null) {
-                    toggleStates.putAll(loadedToggles);
-                    ModConfigs.DebugLog.info("Loaded toggle states from {}", path.toString());
+    private static void loadToggleStates(StartupLoader loader) {
+        toggleStore = Storage.get().toggles(TPAHandler::snapshotToggles);
+        loader.add("toggle states", toggleStore::load, loaded -> {
+            loaded.data().forEach((player, toggledOff) -> {
+                // 旧数据中保存了 false，现在只保存关闭的玩家
+                if (Boolean.TRUE.equals(toggledOff)) {
+                    getState(player).toggledOff = true;
                 }
+            });
+            if (loaded.needsRewrite()) {
+                toggleStore.saveAll();
             }
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to load toggle states: {}", e.getMessage());
-        }
-    }
-
-    // 保存免打扰状态
-    private static void saveToggleStates() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_toggles.json");
-            Files.writeString(path, GSON.toJson(toggleStates));
-            ModConfigs.DebugLog.info("Saved toggle states to {}", path.toString());
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to save toggle states: {}", e.getMessage());
-        }
+        });
     }
 
     // 加载锁定玩家列表
-    private static void loadLockedPlayers() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_locks.json");
-            if (Files.exists(path)) {
-                String jsonContent = Files.readString(path);
-                Map<UUID, Set<UUID>> loadedLocks = GSON.fromJson(jsonContent, new TypeToken<Map<UUID, Set<UUID>>>(){}.getType());
-                lockedPlayers.clear();
-                if (loadedLocks != null) {
-                    lockedPlayers.putAll(loadedLocks);
-                    ModConfigs.DebugLog.info("Loaded locked players from {}", path.toString());
+    private static void loadLockedPlayers(StartupLoader loader) {
+        lockStore = Storage.get().locks(TPAHandler::snapshotLocks);
+        loader.add("locked players", lockStore::load, loaded -> {
+            loaded.data().forEach((player, locked) -> {
+                if (locked != null && !locked.isEmpty()) {
+                    getState(player).locked = Set.copyOf(locked);
                 }
+            });
+            if (loaded.needsRewrite()) {
+                lockStore.saveAll();
             }
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to load locked players: {}", e.getMessage());
-        }
-    }
-
-    // 保存锁定玩家列表
-    private static void saveLockedPlayers() {
-        try {
-            Path path = ModConfigs.getConfigDir().resolve("tpatool_locks.json");
-            Files.writeString(path, GSON.toJson(lockedPlayers));
-            ModConfigs.DebugLog.info("Saved locked players to {}", path.toString());
-        } catch (IOException e) {
-            ModConfigs.DebugLog.error("Failed to save locked players: {}", e.getMessage());
-        }
+        });
     }
 
     // Tab补全：/tpatool needop 的 command 参数
-    private static final SuggestionProvider<CommandSourceStack> COMMAND_SUGGESTIONS = (context, builder) -> {
-        return builder.suggest("tpa").suggest("home").suggest("grave").suggest("back").buildFuture();
-    };
+    private static final SuggestionProvider<CommandSourceStack> COMMAND_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("tpa", "home", "grave", "back"), builder);
 
     // Tab补全：/tpatool needop 的 enable 参数
-    private static final SuggestionProvider<CommandSourceStack> BOOLEAN_SUGGESTIONS = (context, builder) -> {
-        return builder.suggest("true").suggest("false").buildFuture();
-    };
+    private static final SuggestionProvider<CommandSourceStack> BOOLEAN_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("true", "false"), builder);
 
     // Tab补全：时间参数建议
-    private static final SuggestionProvider<CommandSourceStack> TIME_SUGGESTIONS = (context, builder) -> {
-        builder.suggest("10");
-        builder.suggest("30");
-        builder.suggest("60");
-        builder.suggest("120");
-        builder.suggest("300");
-        return builder.buildFuture();
-    };
+    private static final SuggestionProvider<CommandSourceStack> TIME_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("10", "30", "60", "120", "300"), builder);
 
     @SubscribeEvent
     public static void onRegisterCommands(RegisterCommandsEvent event) {
@@ -312,9 +342,103 @@ public class TPAHandler {
         );
     }
 
+    //登记请求；替换同一发送者的旧请求，超过 max_pending_requests 时返回被挤掉的最早请求
+    private static TPARequest addRequest(TPARequest request) {
+        UUID targetId = request.targetId;
+        UUID senderId = request.senderId;
+        LinkedHashMap<UUID, TPARequest> targetRequests = requests.computeIfAbsent(targetId, k -> new LinkedHashMap<>());
+        // 先移除再放入，使重复的请求排到最后
+        targetRequests.remove(senderId);
+        targetRequests.put(senderId, request);
+        getState(senderId).outgoing.add(targetId);
+        expiryQueue.add(request);
+        if (targetRequests.size() <= MAX_PENDING_REQUESTS.get()) {
+            return null;
+        }
+        TPARequest oldest = targetRequests.values().iterator().next();
+        removeRequest(oldest);
+        return oldest;
+    }
+
+    private static TPARequest findRequest(UUID targetId, UUID senderId) {
+        Map<UUID, TPARequest> targetRequests = requests.get(targetId);
+        return targetRequests != null ? targetRequests.get(senderId) : null;
+    }
+
+    //目标最近收到的请求：插入顺序的最后一项，O(1)
+    private static TPARequest latestRequest(UUID targetId) {
+        LinkedHashMap<UUID, TPARequest> targetRequests = requests.get(targetId);
+        if (targetRequests == null) {
+            return null;
+        }
+        Map.Entry<UUID, TPARequest> latest = targetRequests.lastEntry();
+        return latest != null ? latest.getValue() : null;
+    }
+
+    //从两个索引中移除；请求已被替换或移除时返回 false
+    private static boolean removeRequest(TPARequest request) {
+        UUID targetId = request.targetId;
+        UUID senderId = request.senderId;
+        Map<UUID, TPARequest> targetRequests = requests.get(targetId);
+        if (targetRequests == null || !targetRequests.remove(senderId, request)) {
+            return false;
+        }
+        if (targetRequests.isEmpty()) {
+            requests.remove(targetId);
+        }
+        PlayerState senderState = playerStates.get(senderId);
+        if (senderState != null) {
+            senderState.outgoing.remove(targetId);
+            releaseState(senderId, senderState);
+        }
+        return true;
+    }
+
+    //按 UUID 查找在线玩家，不在线时返回 null
+    private static ServerPlayer getOnlinePlayer(UUID uuid) {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        return server != null ? server.getPlayerList().getPlayer(uuid) : null;
+    }
+
+    //给在线玩家发送消息，不在线时忽略
+    private static void notifyPlayer(UUID uuid, Component message) {
+        ServerPlayer player = getOnlinePlayer(uuid);
+        if (player != null) {
+            player.sendSystemMessage(message);
+        }
+    }
+
+    //玩家下线时移除发给他和他发出的请求，并通知另一方
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        UUID playerId = event.getEntity().getUUID();
+        String playerName = event.getEntity().getName().getString();
+        Map<UUID, TPARequest> incoming = requests.get(playerId);
+        if (incoming != null) {
+            for (TPARequest request : new ArrayList<>(incoming.values())) {
+                removeRequest(request);
+                notifyPlayer(request.senderId, translateWithFallback(
+                        "command.tpatool.tpa.target_offline",
+                        "%s went offline, your teleport request was cancelled.", playerName
+                ));
+            }
+        }
+        PlayerState state = playerStates.get(playerId);
+        for (UUID targetId : state != null ? new ArrayList<>(state.outgoing) : List.<UUID>of()) {
+            TPARequest request = findRequest(targetId, playerId);
+            if (request != null) {
+                removeRequest(request);
+                notifyPlayer(targetId, translateWithFallback(
+                        "command.tpatool.tpa.sender_offline",
+                        "%s went offline, their teleport request was cancelled.", playerName
+                ));
+            }
+        }
+    }
+
     private static boolean canSendRequest(ServerPlayer sender) {
-        Long lastRequest = cooldowns.get(sender.getUUID());
-        return lastRequest == null || System.currentTimeMillis() - lastRequest >= COOLDOWN_TIME.get();
+        PlayerState state = playerStates.get(sender.getUUID());
+        return state == null || System.currentTimeMillis() >= state.cooldownUntil;
     }
 
     private static int sendTPARequest(ServerPlayer sender, ServerPlayer target, boolean isTPHere) {
@@ -323,12 +447,11 @@ public class TPAHandler {
             return 0;
         }
 
-        Long lastRequest = cooldowns.get(sender.getUUID());
+        PlayerState senderState = playerStates.get(sender.getUUID());
         long currentTime = System.currentTimeMillis();
-        long cooldownMs = COOLDOWN_TIME.get();
 
-        if (lastRequest != null && currentTime - lastRequest < cooldownMs) {
-            long remainingSeconds = (cooldownMs - (currentTime - lastRequest)) / 1000;
+        if (senderState != null && currentTime < senderState.cooldownUntil) {
+            long remainingSeconds = (senderState.cooldownUntil - currentTime) / 1000;
             sender.sendSystemMessage(translateWithFallback(
                     "command.tpatool.tpa.cooldown",
                     "Please wait for the cooldown (%d seconds)!",
@@ -340,18 +463,25 @@ public class TPAHandler {
             sender.sendSystemMessage(translateWithFallback("command.tpatool.tpa.target_dead", "The target player is dead!"));
             return 0;
         }
-        if (toggleStates.getOrDefault(target.getUUID(), false)) {
+        PlayerState targetState = playerStates.get(target.getUUID());
+        if (targetState != null && targetState.toggledOff) {
             sender.sendSystemMessage(translateWithFallback("command.tpatool.tpa.toggled_off", "%s has disabled TPA requests.", target.getName()));
             return 0;
         }
-        Set<UUID> lockedByTarget = lockedPlayers.getOrDefault(target.getUUID(), new HashSet<>());
-        if (lockedByTarget.contains(sender.getUUID())) {
+        if (targetState != null && targetState.locked.contains(sender.getUUID())) {
             sender.sendSystemMessage(translateWithFallback("command.tpatool.tpa.locked", "%s has locked TPA requests from you.", target.getName()));
             return 0;
         }
 
-        TPARequest request = new TPARequest(sender, target, isTPHere);
-        requests.computeIfAbsent(target.getUUID(), k -> new ArrayList<>()).add(request);
+        TPARequest request = new TPARequest(sender, target, isTPHere, currentTick + TIMEOUT_TICKS.get());
+        TPARequest evicted = addRequest(request);
+        if (evicted != null) {
+            notifyPlayer(evicted.senderId, translateWithFallback(
+                    "command.tpatool.tpa.evicted",
+                    "Your teleport request to %s was dropped because they have too many pending requests.", target.getName()
+            ));
+            ModConfigs.DebugLog.info("TPA request dropped: {} -> {}", evicted.senderName, target.getName().getString());
+        }
 
         String senderName = sender.getName().getString();
         MutableComponent acceptText = Component.literal("[" + translations.getOrDefault("command.tpatool.tpa.accept", "Accept") + " " + senderName + "]")
@@ -368,141 +498,141 @@ public class TPAHandler {
 
         target.sendSystemMessage(message);
         sender.sendSystemMessage(translateWithFallback("command.tpatool.tpa.sent", "Teleport request sent to %s.", target.getName()));
-        cooldowns.put(sender.getUUID(), System.currentTimeMillis());
+        long cooldownUntil = System.currentTimeMillis() + COOLDOWN_TIME.get();
+        getState(sender.getUUID()).cooldownUntil = cooldownUntil;
+        cooldownQueue.add(new Cooldown(sender.getUUID(), cooldownUntil));
         ModConfigs.DebugLog.log("{} request sent: {} -> {}", isTPHere ? "TPAHere" : "TPA", senderName, target.getName().getString());
         return 1;
     }
 
     private static int acceptTPARequest(ServerPlayer target, ServerPlayer sender) {
-        List<TPARequest> targetRequests = requests.get(target.getUUID());
-        if (targetRequests == null || targetRequests.isEmpty()) {
+        if (!requests.containsKey(target.getUUID())) {
             target.sendSystemMessage(translateWithFallback("command.tpatool.tpa.no_request", "You have no pending teleport requests."));
             return 0;
         }
         TPARequest request;
         if (sender != null) {
-            request = targetRequests.stream()
-                    .filter(req -> req.sender.getUUID().equals(sender.getUUID()))
-                    .findFirst()
-                    .orElse(null);
+            request = findRequest(target.getUUID(), sender.getUUID());
             if (request == null) {
                 target.sendSystemMessage(translateWithFallback("command.tpatool.tpa.no_request_from", "No teleport request from %s.", sender.getName()));
                 return 0;
             }
         } else {
-            request = targetRequests.get(targetRequests.size() - 1);
+            request = latestRequest(target.getUUID());
         }
-        if (!request.sender.isAlive()) {
+        ServerPlayer requester = getOnlinePlayer(request.senderId);
+        if (requester == null || !requester.isAlive()) {
             target.sendSystemMessage(translateWithFallback("command.tpatool.tpa.sender_dead", "The requesting player is dead!"));
-            targetRequests.remove(request);
-            if (targetRequests.isEmpty()) {
-                requests.remove(target.getUUID());
-            }
+            removeRequest(request);
             return 0;
         }
-        BackHandler.recordPosition(request.isTPHere ? target : request.sender);
-        if (request.isTPHere) {
-            target.teleportTo(
-                    request.sender.serverLevel(),
-                    request.sender.getX(), request.sender.getY(), request.sender.getZ(),
-                    request.sender.getYRot(), request.sender.getXRot()
-            );
-        } else {
-            request.sender.teleportTo(
-                    target.serverLevel(),
-                    target.getX(), target.getY(), target.getZ(),
-                    target.getYRot(), target.getXRot()
+        // 被传送的一方等待结束后传送到另一方当时的位置
+        ServerPlayer traveller = request.isTPHere ? target : requester;
+        UUID destinationId = request.isTPHere ? request.senderId : request.targetId;
+        String destinationName = request.isTPHere ? request.senderName : request.targetName;
+        TeleportWarmup.start(traveller, mover -> {
+            ServerPlayer destination = getOnlinePlayer(destinationId);
+            if (destination == null || !destination.isAlive()) {
+                mover.sendSystemMessage(translateWithFallback(
+                        "command.tpatool.warmup.destination_gone",
+                        "Teleport cancelled because %s is no longer available.", destinationName
+                ));
+                return;
+            }
+            BackHandler.recordPosition(mover);
+            mover.teleportTo(
+                    destination.serverLevel(),
+                    destination.getX(), destination.getY(), destination.getZ(),
+                    destination.getYRot(), destination.getXRot()
             );
-        }
+        });
         target.sendSystemMessage(translateWithFallback(
                 request.isTPHere ? "command.tpatool.tpahere.accepted" : "command.tpatool.tpa.accepted",
                 request.isTPHere ? "Accepted teleport request to %s." : "Accepted teleport request from %s.",
-                request.sender.getName()
+                requester.getName()
         ));
-        request.sender.sendSystemMessage(translateWithFallback(
+        requester.sendSystemMessage(translateWithFallback(
                 "command.tpatool.tpa.accepted_by",
                 "Your teleport request was accepted by %s!", target.getName()
         ));
-        targetRequests.remove(request);
-        if (targetRequests.isEmpty()) {
-            requests.remove(target.getUUID());
-        }
+        removeRequest(request);
         ModConfigs.DebugLog.log("TPA request accepted: {} teleported to {}",
-                request.isTPHere ? target.getName().getString() : request.sender.getName().getString(),
-                request.isTPHere ? request.sender.getName().getString() : target.getName().getString());
+                request.isTPHere ? target.getName().getString() : request.senderName,
+                request.isTPHere ? request.senderName : target.getName().getString());
         return 1;
     }
 
     private static int denyTPARequest(ServerPlayer target, ServerPlayer sender) {
-        List<TPARequest> targetRequests = requests.get(target.getUUID());
-        if (targetRequests == null || targetRequests.isEmpty()) {
+        if (!requests.containsKey(target.getUUID())) {
             target.sendSystemMessage(translateWithFallback("command.tpatool.tpa.no_request", "You have no pending teleport requests."));
             return 0;
         }
         TPARequest request;
         if (sender != null) {
-            request = targetRequests.stream()
-                    .filter(req -> req.sender.getUUID().equals(sender.getUUID()))
-                    .findFirst()
-                    .orElse(null);
+            request = findRequest(target.getUUID(), sender.getUUID());
             if (request == null) {
                 target.sendSystemMessage(translateWithFallback("command.tpatool.tpa.no_request_from", "No teleport request from %s.", sender.getName()));
                 return 0;
             }
         } else {
-            request = targetRequests.get(targetRequests.size() - 1);
+            request = latestRequest(target.getUUID());
         }
         target.sendSystemMessage(translateWithFallback(
                 request.isTPHere ? "command.tpatool.tpahere.denied" : "command.tpatool.tpa.denied",
                 request.isTPHere ? "Denied teleport request to %s." : "Denied teleport request from %s.",
-                request.sender.getName()
+                request.senderName
         ));
-        request.sender.sendSystemMessage(translateWithFallback(
+        notifyPlayer(request.senderId, translateWithFallback(
                 "command.tpatool.tpa.denied_by",
                 "%s denied your teleport request.", target.getName()
         ));
-        targetRequests.remove(request);
-        if (targetRequests.isEmpty()) {
-            requests.remove(target.getUUID());
-        }
-        ModConfigs.DebugLog.info("TPA request denied: {} -> {}", request.sender.getName().getString(), target.getName().getString());
+        removeRequest(request);
+        ModConfigs.DebugLog.info("TPA request denied: {} -> {}", request.senderName, target.getName().getString());
         return 1;
     }
 
     private static int cancelTPARequest(ServerPlayer sender, ServerPlayer target) {
-        boolean cancelled = false;
-        for (List<TPARequest> targetRequests : requests.values()) {
-            Iterator<TPARequest> iterator = targetRequests.iterator();
-            while (iterator.hasNext()) {
-                TPARequest request = iterator.next();
-                if (request.sender.getUUID().equals(sender.getUUID()) && (target == null || request.target.getUUID().equals(target.getUUID()))) {
-                    iterator.remove();
-                    request.target.sendSystemMessage(translateWithFallback(
-                            "command.tpatool.tpa.cancelled", "%s cancelled their teleport request.", sender.getName()
-                    ));
-                    sender.sendSystemMessage(translateWithFallback(
-                            "command.tpatool.tpa.cancelled_self", "Cancelled teleport request to %s.", request.target.getName()
-                    ));
-                    ModConfigs.DebugLog.info("TPA request cancelled: {} -> {}", sender.getName().getString(), request.target.getName().getString());
-                    cancelled = true;
-                }
+        List<TPARequest> cancelledRequests = new ArrayList<>();
+        if (target != null) {
+            TPARequest request = findRequest(target.getUUID(), sender.getUUID());
+            if (request != null) {
+                cancelledRequests.add(request);
+            }
+        } else {
+            PlayerState state = playerStates.get(sender.getUUID());
+            for (UUID targetId : state != null ? state.outgoing : Set.<UUID>of()) {
+                cancelledRequests.add(findRequest(targetId, sender.getUUID()));
             }
         }
-        requests.entrySet().removeIf(entry -> entry.getValue().isEmpty());
-        if (!cancelled) {
+        if (cancelledRequests.isEmpty()) {
             sender.sendSystemMessage(translateWithFallback(
                     "command.tpatool.tpa.no_requests_to_cancel", "No teleport requests to cancel."
             ));
             return 0;
         }
+        for (TPARequest request : cancelledRequests) {
+            removeRequest(request);
+            notifyPlayer(request.targetId, translateWithFallback(
+                    "command.tpatool.tpa.cancelled", "%s cancelled their teleport request.", sender.getName()
+            ));
+            sender.sendSystemMessage(translateWithFallback(
+                    "command.tpatool.tpa.cancelled_self", "Cancelled teleport request to %s.", request.targetName
+            ));
+            ModConfigs.DebugLog.info("TPA request cancelled: {} -> {}", sender.getName().getString(), request.targetName);
+        }
         return 1;
     }
 
     private static int toggleTPA(ServerPlayer player) {
-        boolean currentState = toggleStates.getOrDefault(player.getUUID(), false);
-        boolean newState = !currentState;
-        toggleStates.put(player.getUUID(), newState);
-        saveToggleStates();
+        PlayerState state = getState(player.getUUID());
+        boolean newState = !state.toggledOff;
+        state.toggledOff = newState;
+        if (newState) {
+            toggleStore.put(player.getUUID(), true);
+        } else {
+            toggleStore.remove(player.getUUID());
+            releaseState(player.getUUID(), state);
+        }
         player.sendSystemMessage(translateWithFallback(
                 "command.tpatool.tpa.toggle_" + (newState ? "on" : "off"),
                 newState ? "TPA requests are now disabled." : "TPA requests are now enabled."
@@ -516,13 +646,15 @@ public class TPAHandler {
             player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.lock_self", "You cannot lock yourself!"));
             return 0;
         }
-        Set<UUID> locked = lockedPlayers.computeIfAbsent(player.getUUID(), k -> new HashSet<>());
-        if (locked.contains(target.getUUID())) {
+        PlayerState state = getState(player.getUUID());
+        if (state.locked.contains(target.getUUID())) {
             player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.already_locked", "%s is already locked.", target.getName()));
             return 0;
         }
+        Set<UUID> locked = new HashSet<>(state.locked);
         locked.add(target.getUUID());
-        saveLockedPlayers();
+        state.locked = Set.copyOf(locked);
+        lockStore.put(player.getUUID(), state.locked);
         player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.locked_player", "Locked TPA requests from %s.", target.getName()));
         ModConfigs.DebugLog.info("Player {} locked TPA from {}", player.getName().getString(), target.getName().getString());
         return 1;
@@ -533,45 +665,58 @@ public class TPAHandler {
             player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.lock_self", "You cannot unlock yourself!"));
             return 0;
         }
-        Set<UUID> locked = lockedPlayers.get(player.getUUID());
-        if (locked == null || !locked.contains(target.getUUID())) {
+        PlayerState state = playerStates.get(player.getUUID());
+        if (state == null || !state.locked.contains(target.getUUID())) {
             player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.not_locked", "%s is not locked.", target.getName()));
             return 0;
         }
+        Set<UUID> locked = new HashSet<>(state.locked);
         locked.remove(target.getUUID());
-        if (locked.isEmpty()) {
-            lockedPlayers.remove(player.getUUID());
+        state.locked = Set.copyOf(locked);
+        if (state.locked.isEmpty()) {
+            lockStore.remove(player.getUUID());
+            releaseState(player.getUUID(), state);
+        } else {
+            lockStore.put(player.getUUID(), state.locked);
         }
-        saveLockedPlayers();
         player.sendSystemMessage(translateWithFallback("command.tpatool.tpa.unlocked_player", "Unlocked TPA requests from %s.", target.getName()));
         ModConfigs.DebugLog.info("Player {} unlocked TPA from {}", player.getName().getString(), target.getName().getString());
         return 1;
     }
 
     public static void tick() {
-        List<UUID> toRemove = new ArrayList<>();
-        for (Map.Entry<UUID, List<TPARequest>> entry : requests.entrySet()) {
-            Iterator<TPARequest> iterator = entry.getValue().iterator();
-            while (iterator.hasNext()) {
-                TPARequest request = iterator.next();
-                if (System.currentTimeMillis() - request.timestamp >= TIMEOUT_TICKS.get() * 50) {
-                    request.target.sendSystemMessage(translateWithFallback(
-                            request.isTPHere ? "command.tpatool.tpahere.timeout" : "command.tpatool.tpa.timeout",
-                            "Teleport request from %s has timed out.", request.sender.getName()
-                    ));
-                    request.sender.sendSystemMessage(translateWithFallback(
-                            "command.tpatool.tpa.timeout_self",
-                            "Your teleport request to %s has timed out.", request.target.getName()
-                    ));
-                    iterator.remove();
-                    ModConfigs.DebugLog.info("TPA request timed out: {} -> {}",
-                            request.sender.getName().getString(), request.target.getName().getString());
+        toggleStore.tick();
+        lockStore.tick();
+        permissionStore.tick();
+        currentTick++;
+        // 冷却按发送顺序排队，队首未到期时后面的也未到期（冷却时间被调小时最多晚一些清理）
+        if (!cooldownQueue.isEmpty()) {
+            long now = System.currentTimeMillis();
+            while (!cooldownQueue.isEmpty() && now >= cooldownQueue.peek().until()) {
+                Cooldown cooldown = cooldownQueue.poll();
+                PlayerState state = playerStates.get(cooldown.player());
+                // 之后又发送过请求时保留较新的冷却
+                if (state != null && state.cooldownUntil == cooldown.until()) {
+                    state.cooldownUntil = 0;
+                    releaseState(cooldown.player(), state);
                 }
             }
-            if (entry.getValue().isEmpty()) {
-                toRemove.add(entry.getKey());
+        }
+        // 只处理已到期的请求，没有到期请求时只比较一次堆顶
+        while (!expiryQueue.isEmpty() && expiryQueue.peek().expiryTick <= currentTick) {
+            TPARequest request = expiryQueue.poll();
+            if (!removeRequest(request)) {
+                continue; // 已被接受、拒绝、取消或替换
             }
+            notifyPlayer(request.targetId, translateWithFallback(
+                    request.isTPHere ? "command.tpatool.tpahere.timeout" : "command.tpatool.tpa.timeout",
+                    "Teleport request from %s has timed out.", request.senderName
+            ));
+            notifyPlayer(request.senderId, translateWithFallback(
+                    "command.tpatool.tpa.timeout_self",
+                    "Your teleport request to %s has timed out.", request.targetName
+            ));
+            ModConfigs.DebugLog.info("TPA request timed out: {} -> {}", request.senderName, request.targetName);
         }
-        toRemove.forEach(requests::remove);
     }
 }
\ No newline at end of file
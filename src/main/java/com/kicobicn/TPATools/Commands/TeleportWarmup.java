@@ -0,0 +1,328 @@
+package com.kicobicn.TPATools.Commands;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkResult;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraftforge.event.entity.living.LivingHurtEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.server.ServerLifecycleHooks;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 传送前的等待（wait_seconds）。等待中的玩家移动或受到伤害时取消，等待结束后在服务端线程上执行传送。
+ * 目的地区块在等待开始时加票预加载，加载完成（或超过 preload_timeout_ticks）后才传送，
+ * 避免传送时在服务端线程上同步加载或生成区块。服务端 tick 只检查正在等待的玩家。
+ * 准备好的传送按先后顺序排队，每个 tick 最多执行 max_teleports_per_tick 次或 teleport_budget_ms 毫秒，
+ * 大量玩家同时传送时分摊到多个 tick。
+ */
+public class TeleportWarmup {
+    //允许的移动距离的平方（0.5 格），只转动视角不会取消
+    private static final double MAX_MOVE_SQR = 0.25;
+    //没有超时的票据，传送完成或取消时移除；以玩家 UUID 区分，多个玩家传送到同一区块时互不影响
+    private static final TicketType<UUID> PRELOAD_TICKET = TicketType.create("tpatools_teleport", UUID::compareTo);
+
+    //正在等待或排队的玩家；被取消的传送从这里移除，队列中的旧条目执行时跳过
+    private static final Map<UUID, Warmup> warmups = new HashMap<>();
+    private static final ArrayDeque<Warmup> teleportQueue = new ArrayDeque<>();
+    private static long currentTick;
+    //本 tick 已执行的传送次数和耗时，包括命令中直接执行的传送
+    private static int teleportsThisTick;
+    private static long teleportNanosThisTick;
+    private static boolean queueChanged;
+
+    //队列统计
+    private static long teleportsQueued;
+    private static int longestQueue;
+
+    //预加载统计
+    private static long preloadsStarted;
+    private static long preloadsAlreadyLoaded;
+    private static long preloadTimeouts;
+    private static long preloadMillisTotal;
+    private static long preloadMillisMax;
+    private static long preloadsCompleted;
+
+    private static class Warmup {
+        final UUID player;
+        final ResourceKey<Level> level;
+        final double x, y, z;
+        final long dueTick;
+        final Consumer<ServerPlayer> teleport;
+        //目的地区块预加载，不需要时为 null
+        Preload preload;
+        //已进入传送队列
+        boolean queued;
+        //已告知排队位置
+        boolean notified;
+
+        Warmup(ServerPlayer player, long dueTick, Consumer<ServerPlayer> teleport) {
+            this.player = player.getUUID();
+            this.level = player.level().dimension();
+            this.x = player.getX();
+            this.y = player.getY();
+            this.z = player.getZ();
+            this.dueTick = dueTick;
+            this.teleport = teleport;
+        }
+    }
+
+    private static class Preload {
+        final UUID player;
+        final ServerLevel level;
+        final ChunkPos chunk;
+        final long startNanos = System.nanoTime();
+        //等待结束后最晚的传送 tick，超过后不再等待区块
+        long deadlineTick = Long.MAX_VALUE;
+        //在服务端线程上完成
+        volatile boolean loaded;
+
+        Preload(UUID player, ServerLevel level, ChunkPos chunk) {
+            this.player = player;
+            this.level = level;
+            this.chunk = chunk;
+        }
+
+        void release() {
+            level.getChunkSource().removeRegionTicket(PRELOAD_TICKET, chunk, 1, player);
+        }
+    }
+
+    //目的地是另一个在线玩家（区块必然已加载）时使用，不预加载
+    public static void start(ServerPlayer player, Consumer<ServerPlayer> teleport) {
+        start(player, null, 0, 0, teleport);
+    }
+
+    //开始等待并预加载 (x, z) 所在区块，结束时把玩家（按 UUID 重新查找）交给 teleport；同一玩家再次开始时替换之前的等待
+    public static void start(ServerPlayer player, ServerLevel level, double x, double z, Consumer<ServerPlayer> teleport) {
+        int seconds = ModConfigs.WAIT_SECONDS.get();
+        // 先取消之前的等待，释放它的票据
+        cancel(player.getUUID());
+        Preload preload = level != null ? preload(player.getUUID(), level, new ChunkPos((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4)) : null;
+        Warmup warmup = new Warmup(player, currentTick + seconds * 20L, teleport);
+        warmup.preload = preload;
+        if (seconds <= 0 && preload == null) {
+            // 不需要等待：没有人排队且本 tick 还有预算时直接传送，否则排队
+            if (teleportQueue.isEmpty() && withinBudget()) {
+                execute(player, warmup);
+            } else {
+                warmups.put(player.getUUID(), warmup);
+                enqueue(warmup);
+            }
+            return;
+        }
+        warmups.put(player.getUUID(), warmup);
+        if (seconds > 0) {
+            player.sendSystemMessage(ModConfigs.translateWithFallback(
+                    "command.tpatool.warmup.start", "Teleporting in %d seconds, don't move.", seconds
+            ));
+            ModConfigs.DebugLog.info("Started {}s teleport warmup for {}", seconds, player.getName().getString());
+        }
+    }
+
+    //区块已加载时返回 null；否则加票并请求加载，完成时记录耗时
+    private static Preload preload(UUID player, ServerLevel level, ChunkPos chunk) {
+        if (level.hasChunk(chunk.x, chunk.z)) {
+            preloadsAlreadyLoaded++;
+            return null;
+        }
+        preloadsStarted++;
+        Preload preload = new Preload(player, level, chunk);
+        level.getChunkSource().addRegionTicket(PRELOAD_TICKET, chunk, 1, player);
+        CompletableFuture<ChunkResult<ChunkAccess>> future = level.getChunkSource().getChunkFuture(chunk.x, chunk.z, ChunkStatus.FULL, true);
+        future.whenComplete((result, error) -> {
+            long millis = (System.nanoTime() - preload.startNanos) / 1_000_000L;
+            preload.loaded = true;
+            recordPreload(millis);
+            ModConfigs.DebugLog.log("Preloaded chunk {} in {} for teleport in {} ms", chunk, level.dimension().location(), millis);
+        });
+        return preload;
+    }
+
+    private static synchronized void recordPreload(long millis) {
+        preloadsCompleted++;
+        preloadMillisTotal += millis;
+        preloadMillisMax = Math.max(preloadMillisMax, millis);
+    }
+
+    //取消并释放票据
+    private static void cancel(UUID player) {
+        Warmup warmup = warmups.remove(player);
+        if (warmup != null && warmup.preload != null) {
+            warmup.preload.release();
+        }
+    }
+
+    private static boolean withinBudget() {
+        return teleportsThisTick < ModConfigs.MAX_TELEPORTS_PER_TICK.get()
+                && teleportNanosThisTick < ModConfigs.TELEPORT_BUDGET_MS.get() * 1_000_000L;
+    }
+
+    private static void enqueue(Warmup warmup) {
+        warmup.queued = true;
+        teleportQueue.add(warmup);
+        teleportsQueued++;
+        queueChanged = true;
+    }
+
+    //执行传送并计入本 tick 的预算；传送后才移除票据，区块由玩家继续保持加载
+    private static void execute(ServerPlayer player, Warmup warmup) {
+        long start = System.nanoTime();
+        warmup.teleport.accept(player);
+        if (warmup.preload != null) {
+            warmup.preload.release();
+        }
+        teleportsThisTick++;
+        teleportNanosThisTick += System.nanoTime() - start;
+    }
+
+    public static void tick() {
+        currentTick++;
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (!warmups.isEmpty()) {
+            checkWarmups(server);
+        }
+        if (!teleportQueue.isEmpty()) {
+            runQueue(server);
+        }
+        teleportsThisTick = 0;
+        teleportNanosThisTick = 0;
+    }
+
+    //检查等待中的玩家，准备好的放入传送队列
+    private static void checkWarmups(MinecraftServer server) {
+        Iterator<Map.Entry<UUID, Warmup>> iterator = warmups.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Warmup> entry = iterator.next();
+            Warmup warmup = entry.getValue();
+            ServerPlayer player = server != null ? server.getPlayerList().getPlayer(entry.getKey()) : null;
+            if (player == null) {
+                iterator.remove();
+                if (warmup.preload != null) {
+                    warmup.preload.release();
+                }
+                continue;
+            }
+            if (player.level().dimension() != warmup.level || player.distanceToSqr(warmup.x, warmup.y, warmup.z) > MAX_MOVE_SQR) {
+                iterator.remove();
+                if (warmup.preload != null) {
+                    warmup.preload.release();
+                }
+                player.sendSystemMessage(ModConfigs.translateWithFallback(
+                        "command.tpatool.warmup.moved", "Teleport cancelled because you moved."
+                ));
+                continue;
+            }
+            if (warmup.queued) {
+                continue;
+            }
+            long remainingTicks = warmup.dueTick - currentTick;
+            if (remainingTicks <= 0) {
+                Preload preload = warmup.preload;
+                if (preload != null && !preload.loaded) {
+                    // 等待结束但区块还没加载好，最多再等 preload_timeout_ticks
+                    if (preload.deadlineTick == Long.MAX_VALUE) {
+                        preload.deadlineTick = currentTick + ModConfigs.PRELOAD_TIMEOUT_TICKS.get();
+                    }
+                    if (currentTick < preload.deadlineTick) {
+                        continue;
+                    }
+                    preloadTimeouts++;
+                    ModConfigs.DebugLog.info("Chunk {} was not loaded within {} ticks, teleporting {} anyway",
+                            preload.chunk, ModConfigs.PRELOAD_TIMEOUT_TICKS.get(), player.getName().getString());
+                }
+                enqueue(warmup);
+            } else if (remainingTicks % 20 == 0) {
+                // 每秒在动作栏显示一次剩余时间
+                player.displayClientMessage(ModConfigs.translateWithFallback(
+                        "command.tpatool.warmup.countdown", "Teleporting in %d...", remainingTicks / 20
+                ), true);
+            }
+        }
+    }
+
+    //按排队顺序执行，直到用完本 tick 的次数或时间预算
+    private static void runQueue(MinecraftServer server) {
+        longestQueue = Math.max(longestQueue, teleportQueue.size());
+        while (!teleportQueue.isEmpty() && withinBudget()) {
+            Warmup warmup = teleportQueue.poll();
+            if (warmups.get(warmup.player) != warmup) {
+                continue; // 已取消或被新的传送替换
+            }
+            warmups.remove(warmup.player);
+            ServerPlayer player = server != null ? server.getPlayerList().getPlayer(warmup.player) : null;
+            if (player == null) {
+                if (warmup.preload != null) {
+                    warmup.preload.release();
+                }
+                continue;
+            }
+            // 传送中可以开始新的等待
+            execute(player, warmup);
+        }
+        if (!queueChanged) {
+            return;
+        }
+        // 告知本 tick 没有轮到的新排队玩家
+        queueChanged = false;
+        int position = 0;
+        for (Warmup warmup : teleportQueue) {
+            if (warmups.get(warmup.player) != warmup) {
+                continue;
+            }
+            position++;
+            if (!warmup.notified && server != null) {
+                warmup.notified = true;
+                ServerPlayer player = server.getPlayerList().getPlayer(warmup.player);
+                if (player != null) {
+                    player.sendSystemMessage(ModConfigs.translateWithFallback(
+                            "command.tpatool.warmup.queued", "Many players are teleporting, you are number %d in the queue.", position
+                    ));
+                }
+            }
+        }
+    }
+
+    //传送队列统计：当前排队人数、进入过队列的传送次数、最长队列
+    public record QueueStats(int waiting, long queued, int longest) {
+    }
+
+    public static QueueStats getQueueStats() {
+        return new QueueStats(teleportQueue.size(), teleportsQueued, longestQueue);
+    }
+
+    //alreadyLoaded：目的地区块已加载、无需预加载的次数；耗时从加票到区块加载完成
+    public record PreloadStats(long alreadyLoaded, long started, long completed, long timeouts, long averageMillis, long maxMillis) {
+    }
+
+    public static synchronized PreloadStats getPreloadStats() {
+        long average = preloadsCompleted > 0 ? preloadMillisTotal / preloadsCompleted : 0;
+        return new PreloadStats(preloadsAlreadyLoaded, preloadsStarted, preloadsCompleted, preloadTimeouts, average, preloadMillisMax);
+    }
+
+    @SubscribeEvent
+    public static void onLivingHurt(LivingHurtEvent event) {
+        if (event.getEntity() instanceof ServerPlayer player && warmups.containsKey(player.getUUID())) {
+            cancel(player.getUUID());
+            player.sendSystemMessage(ModConfigs.translateWithFallback(
+                    "command.tpatool.warmup.damaged", "Teleport cancelled because you took damage."
+            ));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        cancel(event.getEntity().getUUID());
+    }
+}
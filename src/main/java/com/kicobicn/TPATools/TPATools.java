@@ -23,6 +23,10 @@ public class TPATools {
         MinecraftForge.EVENT_BUS.register(BackHandler.class);
         MinecraftForge.EVENT_BUS.register(HomeHandler.class);
         MinecraftForge.EVENT_BUS.register(GraveHandler.class);
+        MinecraftForge.EVENT_BUS.register(PlayerNameCache.class);
+        MinecraftForge.EVENT_BUS.register(TeleportWarmup.class);
+        MinecraftForge.EVENT_BUS.register(MentionNotifier.class);
+        MinecraftForge.EVENT_BUS.register(ItemPlaceholders.class);
         MinecraftForge.EVENT_BUS.register(ModConfigs.class);
         MinecraftForge.EVENT_BUS.register(new ChatHandler());
         MinecraftForge.EVENT_BUS.register(new Object() {
@@ -30,6 +34,10 @@ public class TPATools {
             public void onServerTick(TickEvent.ServerTickEvent event) {
                 if (event.phase == TickEvent.Phase.END) {
                     TPAHandler.tick();
+                    TeleportWarmup.tick();
+                    MentionNotifier.tick();
+                    HomeHandler.tick();
+                    GraveHandler.tick();
                 }
             }
         });
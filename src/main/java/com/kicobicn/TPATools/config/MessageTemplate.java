@@ -0,0 +1,141 @@
+package com.kicobicn.TPATools.config;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.MissingFormatArgumentException;
+
+/**
+ * 预先解析的翻译文本，由 translateWithFallback 使用。
+ * 支持 %s、%d、%1$s 形式的参数以及 %% 和 %n；文本按参数位置切成片段，
+ * 参数为 Component 时直接作为子组件加入，保留其样式。
+ * 含有其他格式（例如 %.2f）的文本仍用 String.format 处理。
+ */
+public class MessageTemplate {
+    private final String pattern;
+    //String 为普通文本，Integer 为参数下标；为 null 时使用 String.format
+    private final Object[] segments;
+    //没有参数时的完整文本
+    private final Component constant;
+
+    private MessageTemplate(String pattern, Object[] segments) {
+        this.pattern = pattern;
+        this.segments = segments;
+        // 相邻的普通文本已经合并，没有参数的文本最多只有一个片段
+        if (segments == null || (segments.length == 1 && segments[0] instanceof Integer) || segments.length > 1) {
+            this.constant = null;
+        } else {
+            this.constant = Component.literal(segments.length == 0 ? "" : (String) segments[0]);
+        }
+    }
+
+    public static MessageTemplate compile(String pattern) {
+        List<Object> segments = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int nextArg = 0;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                text.append(c);
+                i++;
+                continue;
+            }
+            if (i + 1 >= pattern.length()) {
+                return new MessageTemplate(pattern, null);
+            }
+            char next = pattern.charAt(i + 1);
+            if (next == '%') {
+                text.append('%');
+                i += 2;
+                continue;
+            }
+            if (next == 'n') {
+                text.append(System.lineSeparator());
+                i += 2;
+                continue;
+            }
+            int argIndex;
+            int end = i + 1;
+            while (end < pattern.length() && Character.isDigit(pattern.charAt(end))) {
+                end++;
+            }
+            if (end > i + 1 && end < pattern.length() && pattern.charAt(end) == '$') {
+                // %1$s：显式指定参数位置，不影响后面 %s 的顺序
+                argIndex = Integer.parseInt(pattern.substring(i + 1, end)) - 1;
+                end++;
+            } else if (end == i + 1) {
+                argIndex = nextArg++;
+            } else {
+                return new MessageTemplate(pattern, null);
+            }
+            if (argIndex < 0 || end >= pattern.length()
+                    || (pattern.charAt(end) != 's' && pattern.charAt(end) != 'd')) {
+                return new MessageTemplate(pattern, null);
+            }
+            if (!text.isEmpty()) {
+                segments.add(text.toString());
+                text.setLength(0);
+            }
+            segments.add(argIndex);
+            i = end + 1;
+        }
+        if (!text.isEmpty()) {
+            segments.add(text.toString());
+        }
+        return new MessageTemplate(pattern, segments.toArray());
+    }
+
+    /**
+     * 生成消息。返回新的 MutableComponent，调用方可以继续修改样式。
+     */
+    public MutableComponent render(Object... args) {
+        if (constant != null) {
+            // 没有参数，复制缓存的组件（只复制外层对象，文本内容共享）
+            return constant.copy();
+        }
+        if (segments == null) {
+            return Component.literal(String.format(pattern, flatten(args)));
+        }
+        int start = 0;
+        MutableComponent result;
+        if (segments[0] instanceof String first) {
+            result = Component.literal(first);
+            start = 1;
+        } else {
+            result = Component.empty();
+        }
+        for (int i = start; i < segments.length; i++) {
+            Object segment = segments[i];
+            if (segment instanceof String text) {
+                result.append(Component.literal(text));
+                continue;
+            }
+            int index = (Integer) segment;
+            if (index >= args.length) {
+                throw new MissingFormatArgumentException("%" + (index + 1) + "$s");
+            }
+            if (args[index] instanceof Component component) {
+                result.append(component);
+            } else {
+                result.append(Component.literal(String.valueOf(args[index])));
+            }
+        }
+        return result;
+    }
+
+    //String.format 不认识 Component，先转成文本
+    private static Object[] flatten(Object[] args) {
+        Object[] stringArgs = new Object[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Component component) {
+                stringArgs[i] = component.getString();
+            } else {
+                stringArgs[i] = args[i];
+            }
+        }
+        return stringArgs;
+    }
+}
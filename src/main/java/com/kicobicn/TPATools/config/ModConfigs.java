@@ -8,6 +8,7 @@ import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraftforge.common.ForgeConfigSpec;
@@ -25,25 +26,52 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.kicobicn.TPATools.Commands.GraveHandler;
+import com.kicobicn.TPATools.Commands.MentionNotifier;
+import com.kicobicn.TPATools.Commands.TeleportWarmup;
+import com.kicobicn.TPATools.Commands.HomeHandler;
 import com.kicobicn.TPATools.Commands.TPAHandler;
+import com.kicobicn.TPATools.storage.Storage;
+import com.kicobicn.TPATools.storage.WriteStats;
 
 public class ModConfigs {
     private static final Logger LOGGER = LogManager.getLogger("TPAtools");
 
     // 配置项定义
     public static final Map<String, String> translations = new HashMap<>();
+    //加载语言时预先解析的翻译，整体替换，可以在任意线程读取
+    private static volatile Map<String, MessageTemplate> templates = Map.of();
+    //语言文件中没有的键使用代码中的默认文本，按默认文本缓存
+    private static final Map<String, MessageTemplate> fallbackTemplates = new ConcurrentHashMap<>();
 
     public static final ForgeConfigSpec CONFIG;
     public static final ForgeConfigSpec.LongValue COOLDOWN_TIME;
     public static final ForgeConfigSpec.IntValue TIMEOUT_TICKS;
+    public static final ForgeConfigSpec.IntValue MAX_PENDING_REQUESTS;
     public static final ForgeConfigSpec.ConfigValue<String> DEFAULT_LANGUAGE;
     public static final ForgeConfigSpec.IntValue MAX_HOMES;
     public static final ForgeConfigSpec.IntValue COOLDOWN_SECONDS;
     public static final ForgeConfigSpec.IntValue WAIT_SECONDS;
+    public static final ForgeConfigSpec.IntValue PRELOAD_TIMEOUT_TICKS;
+    public static final ForgeConfigSpec.IntValue MAX_TELEPORTS_PER_TICK;
+    public static final ForgeConfigSpec.IntValue TELEPORT_BUDGET_MS;
     public static final ForgeConfigSpec.BooleanValue DEBUG_MODE;
+    public static final ForgeConfigSpec.IntValue FLUSH_INTERVAL_SECONDS;
+    public static final ForgeConfigSpec.IntValue FLUSH_DEADLINE_MS;
+    public static final ForgeConfigSpec.IntValue JOURNAL_COMPACT_BYTES;
+    public static final ForgeConfigSpec.ConfigValue<String> STORAGE_BACKEND;
+    public static final ForgeConfigSpec.ConfigValue<String> STORAGE_FORMAT;
+    public static final ForgeConfigSpec.BooleanValue COMPRESS_STORAGE;
+    public static final ForgeConfigSpec.IntValue HOME_CACHE_SIZE;
+    public static final ForgeConfigSpec.IntValue HOME_LOAD_WAIT_MS;
+    public static final ForgeConfigSpec.IntValue LOAD_TIMEOUT_SECONDS;
+    public static final ForgeConfigSpec.IntValue SUGGESTION_LIMIT;
+    public static final ForgeConfigSpec.IntValue MENTION_WINDOW_TICKS;
 
     //配置路径检查
     public static Path getConfigDir() {
@@ -72,26 +100,17 @@ public class ModConfigs {
     public static final Map<String, Boolean> commandPermissions = new HashMap<>();
 
     // Tab补全提供器
-    private static final SuggestionProvider<CommandSourceStack> COMMAND_SUGGESTIONS = (context, builder) -> {
-        return builder.suggest("tpa").suggest("home").suggest("grave").suggest("back").buildFuture();
-    };
-
-    private static final SuggestionProvider<CommandSourceStack> BOOLEAN_SUGGESTIONS = (context, builder) -> {
-        return builder.suggest("true").suggest("false").buildFuture();
-    };
-
-    private static final SuggestionProvider<CommandSourceStack> LANGUAGE_SUGGESTIONS = (context, builder) -> {
-        return builder.suggest("en_us").suggest("zh_cn").buildFuture();
-    };
-
-    private static final SuggestionProvider<CommandSourceStack> TIME_SUGGESTIONS = (context, builder) -> {
-        builder.suggest("10");
-        builder.suggest("30");
-        builder.suggest("60");
-        builder.suggest("120");
-        builder.suggest("300");
-        return builder.buildFuture();
-    };
+    private static final SuggestionProvider<CommandSourceStack> COMMAND_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("tpa", "home", "grave", "back"), builder);
+
+    private static final SuggestionProvider<CommandSourceStack> BOOLEAN_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("true", "false"), builder);
+
+    private static final SuggestionProvider<CommandSourceStack> LANGUAGE_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("en_us", "zh_cn"), builder);
+
+    private static final SuggestionProvider<CommandSourceStack> TIME_SUGGESTIONS = (context, builder) ->
+            SharedSuggestionProvider.suggest(List.of("10", "30", "60", "120", "300"), builder);
 
     static {
         ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
@@ -100,14 +119,48 @@ public class ModConfigs {
                 .defineInRange("cooldown", 3 * 1000L, 0, Long.MAX_VALUE);
         TIMEOUT_TICKS = builder.comment("Timeout for TPA requests in ticks")
                 .defineInRange("timeout", 30 * 20, 0, Integer.MAX_VALUE);
+        MAX_PENDING_REQUESTS = builder.comment("Maximum number of pending TPA requests a player can receive; the oldest request is dropped when a new one exceeds it")
+                .defineInRange("max_pending_requests", 10, 1, 100);
         DEFAULT_LANGUAGE = builder.comment("Default language for messages (e.g., 'en_us', 'zh_cn')")
                 .define("language", "zh_cn");
         MAX_HOMES = builder.comment("Maximum number of homes per player")
                 .defineInRange("max_homes", 2, 1, Integer.MAX_VALUE);
         COOLDOWN_SECONDS = builder.comment("TPA cooldown time in seconds")
                 .defineInRange("cooldown_seconds", 60, 0, Integer.MAX_VALUE);
-        WAIT_SECONDS = builder.comment("TPA wait time in seconds")
-                .defineInRange("wait_seconds", 30, 0, Integer.MAX_VALUE);
+        WAIT_SECONDS = builder.comment("Seconds a player must stand still before /home, /back, /grave and accepted TPA requests teleport; moving or taking damage cancels it, 0 teleports instantly")
+                .defineInRange("wait_seconds", 3, 0, Integer.MAX_VALUE);
+        PRELOAD_TIMEOUT_TICKS = builder.comment("Maximum ticks to keep waiting for the destination chunk to load after the wait time; the teleport then happens anyway")
+                .defineInRange("preload_timeout_ticks", 100, 1, 1200);
+        MAX_TELEPORTS_PER_TICK = builder.comment("Maximum number of teleports executed per server tick; further teleports wait in a queue for the next ticks")
+                .defineInRange("max_teleports_per_tick", 5, 1, 1000);
+        TELEPORT_BUDGET_MS = builder.comment("Maximum milliseconds per server tick spent executing teleports; further teleports wait in a queue for the next ticks")
+                .defineInRange("teleport_budget_ms", 10, 1, 50);
+        SUGGESTION_LIMIT = builder.comment("Maximum number of tab-completion suggestions sent for home names; own, shared and recently used homes are kept first")
+                .defineInRange("suggestion_limit", 50, 1, 1000);
+        MENTION_WINDOW_TICKS = builder.comment("Minimum ticks between two mention notifications (title and sound) for the same player; mentions in between are combined into one")
+                .defineInRange("mention_window_ticks", 40, 1, 1200);
+        builder.pop();
+
+        builder.push("storage");
+        FLUSH_INTERVAL_SECONDS = builder.comment("Interval in seconds between coalesced writes of modified data")
+                .defineInRange("flush_interval_seconds", 5, 1, 3600);
+        FLUSH_DEADLINE_MS = builder.comment("Maximum time in milliseconds to wait for pending writes on server shutdown")
+                .defineInRange("flush_deadline_ms", 10000, 100, Integer.MAX_VALUE);
+        JOURNAL_COMPACT_BYTES = builder.comment("Size in bytes after which the home journal is folded into the per-player snapshots")
+                .defineInRange("journal_compact_bytes", 1024 * 1024, 1024, Integer.MAX_VALUE);
+        STORAGE_BACKEND = builder.comment("Where data is stored: 'json' for files in config/tpatools, 'h2' for an embedded database."
+                        + " Use /tpatools export json and /tpatools import json to move existing data between backends")
+                .defineInList("backend", "json", List.of("json", "h2"));
+        STORAGE_FORMAT = builder.comment("Format of home and grave data files: 'json' or 'binary'. Existing files are converted on the next save")
+                .defineInList("format", "json", List.of("json", "binary"));
+        COMPRESS_STORAGE = builder.comment("Compress binary data files with gzip")
+                .define("compress", true);
+        HOME_CACHE_SIZE = builder.comment("Number of offline players whose homes are kept in memory; online players are always loaded")
+                .defineInRange("home_cache_size", 500, 0, Integer.MAX_VALUE);
+        HOME_LOAD_WAIT_MS = builder.comment("Maximum milliseconds a home command waits for homes that are not loaded yet; after that the player is asked to try again while loading continues")
+                .defineInRange("home_load_wait_ms", 50, 0, 5000);
+        LOAD_TIMEOUT_SECONDS = builder.comment("Maximum time in seconds to wait for all data to load on server start; stores that take longer start empty")
+                .defineInRange("load_timeout_seconds", 60, 1, 3600);
         builder.pop();
 
         builder.push("debug");
@@ -118,6 +171,14 @@ public class ModConfigs {
         CONFIG = builder.build();
     }
 
+    public static boolean isBinaryStorage() {
+        return STORAGE_FORMAT.get().equals("binary");
+    }
+
+    public static boolean isSqlStorage() {
+        return STORAGE_BACKEND.get().equals("h2");
+    }
+
     //调试模式
     public static boolean isDebugEnabled() {
         return DEBUG_MODE.get();
@@ -161,7 +222,22 @@ public class ModConfigs {
     private static final Set<String> SUPPORTED_LANGUAGES = Set.of("en_us", "zh_cn");
 
     public static void loadTranslations(String lang) {
+        setTranslations(readTranslations(lang));
+    }
+
+    public static void setTranslations(Map<String, String> loaded) {
         translations.clear();
+        translations.putAll(loaded);
+        Map<String, MessageTemplate> compiled = new HashMap<>(Math.max(16, loaded.size() * 2));
+        for (Map.Entry<String, String> entry : loaded.entrySet()) {
+            compiled.put(entry.getKey(), MessageTemplate.compile(entry.getValue()));
+        }
+        templates = compiled;
+    }
+
+    //读取语言文件，不修改当前翻译，可以在后台线程调用；找不到时返回空 Map
+    public static Map<String, String> readTranslations(String lang) {
+        Map<String, String> loaded = new HashMap<>();
         String fileName = String.format("%s.json", lang);
         String modid = TPATools.MODID; // 用你在 TPATools.java 里定义的 MODID 常量
 
@@ -175,9 +251,8 @@ public class ModConfigs {
             if (candidate != null && Files.exists(candidate)) {
                 try (BufferedReader reader = Files.newBufferedReader(candidate, StandardCharsets.UTF_8)) {
                     JsonObject json = JsonParser.parseReader(reader).getAsJsonObject();
-                    for (String key : json.keySet()) translations.put(key, json.get(key).getAsString());
+                    for (String key : json.keySet()) loaded.put(key, json.get(key).getAsString());
                     LOGGER.info("Loaded language from mod file path: assets/{}/lang/{}", modid, fileName);
-                    return;
                 }
             } else {
                 LOGGER.debug("ModFile.findResource did not return existing path for assets/{}/lang/{}", modid, fileName);
@@ -185,19 +260,15 @@ public class ModConfigs {
         } catch (Exception e) {
             LOGGER.warn("ModFile lookup failed for assets/{}/lang/{}: {}", modid, fileName, e.getMessage());
         }
+        return loaded;
     }
 
     public static MutableComponent translateWithFallback(String key, String fallback, Object... args) {
-        String translated = translations.getOrDefault(key, fallback);
-        Object[] stringArgs = new Object[args.length];
-        for (int i = 0; i < args.length; i++) {
-            if (args[i] instanceof Component component) {
-                stringArgs[i] = component.getString();
-            } else {
-                stringArgs[i] = args[i];
-            }
+        MessageTemplate template = templates.get(key);
+        if (template == null) {
+            template = fallbackTemplates.computeIfAbsent(fallback, MessageTemplate::compile);
         }
-        return Component.literal(String.format(translated, stringArgs));
+        return template.render(args);
     }
 
     //注册tpatool管理命令
@@ -270,8 +341,7 @@ public class ModConfigs {
                                                         );
                                                         return 0;
                                                     }
-                                                    commandPermissions.put(command, enable);
-                                                    TPAHandler.saveCommandPermissions();
+                                                    TPAHandler.setCommandPermission(command, enable);
                                                     context.getSource().sendSuccess(
                                                             () -> translateWithFallback(
                                                                     enable ? "command.tpatool.needop.success_enabled" : "command.tpatool.needop.success_disabled",
@@ -322,6 +392,99 @@ public class ModConfigs {
                                             return 1;
                                         }))
                         )
+                        .then(Commands.literal("export")
+                                .then(Commands.literal("json")
+                                        .executes(context -> {
+                                            Path exportDir = getConfigDir().resolve("export");
+                                            try {
+                                                HomeHandler.exportJson(exportDir.resolve("homes.json"));
+                                                GraveHandler.exportJson(exportDir.resolve("graves.json"));
+                                            } catch (IOException e) {
+                                                DebugLog.error("Failed to export data: {}", e.getMessage());
+                                                context.getSource().sendFailure(translateWithFallback(
+                                                        "command.tpatool.export.failed", "Failed to export data: %s", e.getMessage()));
+                                                return 0;
+                                            }
+                                            context.getSource().sendSuccess(
+                                                    () -> translateWithFallback("command.tpatool.export.success", "Exported homes and graves to %s.", exportDir.toString()),
+                                                    true
+                                            );
+                                            return 1;
+                                        })))
+                        .then(Commands.literal("import")
+                                .then(Commands.literal("json")
+                                        .executes(context -> {
+                                            Path exportDir = getConfigDir().resolve("export");
+                                            boolean imported;
+                                            try {
+                                                imported = HomeHandler.importJson(exportDir.resolve("homes.json"));
+                                                imported |= GraveHandler.importJson(exportDir.resolve("graves.json"));
+                                            } catch (IOException e) {
+                                                DebugLog.error("Failed to import data: {}", e.getMessage());
+                                                context.getSource().sendFailure(translateWithFallback(
+                                                        "command.tpatool.import.failed", "Failed to import data: %s", e.getMessage()));
+                                                return 0;
+                                            }
+                                            if (!imported) {
+                                                context.getSource().sendFailure(translateWithFallback(
+                                                        "command.tpatool.import.not_found", "No homes.json or graves.json found in %s.", exportDir.toString()));
+                                                return 0;
+                                            }
+                                            context.getSource().sendSuccess(
+                                                    () -> translateWithFallback("command.tpatool.import.success", "Imported homes and graves from %s.", exportDir.toString()),
+                                                    true
+                                            );
+                                            return 1;
+                                        })))
+                        .then(Commands.literal("stats")
+                                .executes(context -> {
+                                    for (WriteStats writer : Storage.get().getWriteStats()) {
+                                        context.getSource().sendSuccess(
+                                                () -> translateWithFallback(
+                                                        "command.tpatool.stats.writer",
+                                                        "%s: %d writes issued, %d coalesced",
+                                                        writer.getName(), writer.getWriteCount(), writer.getCoalescedWrites()
+                                                ),
+                                                false
+                                        );
+                                    }
+                                    context.getSource().sendSuccess(
+                                            () -> translateWithFallback(
+                                                    "command.tpatool.stats.graves",
+                                                    "Graves: %d deaths recorded, %d writes issued",
+                                                    GraveHandler.getDeathsRecorded(), GraveHandler.getWriteStats().getWriteCount()
+                                            ),
+                                            false
+                                    );
+                                    TeleportWarmup.PreloadStats preloads = TeleportWarmup.getPreloadStats();
+                                    context.getSource().sendSuccess(
+                                            () -> translateWithFallback(
+                                                    "command.tpatool.stats.preloads",
+                                                    "Teleport chunks: %d already loaded, %d preloaded (%d done, %d timed out), average %d ms, max %d ms",
+                                                    preloads.alreadyLoaded(), preloads.started(), preloads.completed(),
+                                                    preloads.timeouts(), preloads.averageMillis(), preloads.maxMillis()
+                                            ),
+                                            false
+                                    );
+                                    TeleportWarmup.QueueStats queue = TeleportWarmup.getQueueStats();
+                                    context.getSource().sendSuccess(
+                                            () -> translateWithFallback(
+                                                    "command.tpatool.stats.teleport_queue",
+                                                    "Teleport queue: %d waiting, %d teleports queued in total, longest queue %d",
+                                                    queue.waiting(), queue.queued(), queue.longest()
+                                            ),
+                                            false
+                                    );
+                                    context.getSource().sendSuccess(
+                                            () -> translateWithFallback(
+                                                    "command.tpatool.stats.mentions",
+                                                    "Mention notifications: %d sent, %d packets suppressed by combining",
+                                                    MentionNotifier.getNotificationsSent(), MentionNotifier.getPacketsSuppressed()
+                                            ),
+                                            false
+                                    );
+                                    return 1;
+                                }))
                         .then(Commands.literal("debug")
                                 .then(Commands.argument("enable", StringArgumentType.string())
                                         .suggests(BOOLEAN_SUGGESTIONS)
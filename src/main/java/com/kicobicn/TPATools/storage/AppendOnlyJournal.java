@@ -0,0 +1,101 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 只追加的修改日志，每条记录占一行。
+ * 记录先在服务端线程缓存，每 tick 合并成一次追加写交给 IO 线程；
+ * 回放时忽略没有换行结尾的最后一行（崩溃时写了一半的记录）。
+ */
+public class AppendOnlyJournal {
+    private final String name;
+    private final Supplier<Path> path;
+    private final List<String> pending = new ArrayList<>();
+    private long size;
+
+    public AppendOnlyJournal(String name, Supplier<Path> path) {
+        this.name = name;
+        this.path = path;
+    }
+
+    //追加一条记录（不能包含换行）
+    public void append(String record) {
+        pending.add(record);
+        size += record.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    //把缓存的记录提交给 IO 线程
+    public void tick() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        StringBuilder batch = new StringBuilder();
+        for (String record : pending) {
+            batch.append(record).append('\n');
+        }
+        pending.clear();
+        Path target = path.get();
+        WriteBehindWriter.runOnIOThread(() -> {
+            try {
+                Files.createDirectories(target.getParent());
+                Files.writeString(target, batch, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                ModConfigs.DebugLog.error("Failed to append to {}: {}", name, e.getMessage());
+            }
+        });
+    }
+
+    //日志当前大小（字节），包括尚未写出的记录
+    public long getSize() {
+        return size;
+    }
+
+    //压缩完成后由 IO 线程调用，删除已折叠进快照的日志
+    public void deleteFile() {
+        try {
+            Files.deleteIfExists(path.get());
+        } catch (IOException e) {
+            ModConfigs.DebugLog.error("Failed to truncate {}: {}", name, e.getMessage());
+        }
+    }
+
+    //开始一次压缩：之前的记录都已包含在快照中
+    public void resetSize() {
+        size = 0;
+    }
+
+    //按顺序回放日志中的完整记录，返回回放的条数
+    public int replay(Consumer<String> consumer) throws IOException {
+        Path file = path.get();
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        size = content.getBytes(StandardCharsets.UTF_8).length;
+        int count = 0;
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                ModConfigs.DebugLog.warn("Ignoring truncated last record in {}", name);
+                break;
+            }
+            if (end > start) {
+                consumer.accept(content.substring(start, end));
+                count++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,168 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import net.minecraft.resources.ResourceLocation;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 紧凑二进制存储格式。
+ * 文件头：魔数 "TPAT"、数据类型、版本号、标志位（bit0 = gzip）；
+ * 之后是维度字符串表和具体数据。数量使用 varint，坐标使用原始 double/float。
+ */
+public final class BinaryCodec {
+    public static final byte TYPE_HOMES = 'H';
+    public static final byte TYPE_PUBLIC_INDEX = 'I';
+    public static final byte TYPE_GRAVES = 'G';
+
+    private static final int MAGIC = 0x54504154;
+    private static final int VERSION = 2;
+    private static final int FLAG_GZIP = 1;
+
+    private BinaryCodec() {
+    }
+
+    public interface Encoder {
+        void write(DataOutputStream out, DimensionTable dimensions) throws IOException;
+    }
+
+    //version 是文件中记录的格式版本，用于读取旧版本的数据
+    public interface Decoder<T> {
+        T read(DataInputStream in, DimensionTable dimensions, int version) throws IOException;
+    }
+
+    public static byte[] encode(byte type, Encoder encoder) throws IOException {
+        return encode(type, ModConfigs.COMPRESS_STORAGE.get(), encoder);
+    }
+
+    //gzip 由调用方指定，不读取配置
+    public static byte[] encode(byte type, boolean gzip, Encoder encoder) throws IOException {
+        // 先写正文以收集维度表，再按 表 + 正文 的顺序输出
+        DimensionTable dimensions = new DimensionTable();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        encoder.write(new DataOutputStream(body), dimensions);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + 64);
+        DataOutputStream header = new DataOutputStream(result);
+        header.writeInt(MAGIC);
+        header.writeByte(type);
+        header.writeByte(VERSION);
+        header.writeByte(gzip ? FLAG_GZIP : 0);
+        header.flush();
+
+        OutputStream payloadStream = gzip ? new GZIPOutputStream(result) : result;
+        DataOutputStream payload = new DataOutputStream(payloadStream);
+        dimensions.write(payload);
+        body.writeTo(payload);
+        payload.flush();
+        if (payloadStream instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        return result.toByteArray();
+    }
+
+    public static <T> T decode(byte[] data, byte type, Decoder<T> decoder) throws IOException {
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(data));
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a TPATools binary file");
+        }
+        byte actualType = header.readByte();
+        if (actualType != type) {
+            throw new IOException("Unexpected binary data type " + (char) actualType);
+        }
+        int version = header.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported binary format version " + version);
+        }
+        int flags = header.readUnsignedByte();
+        DataInputStream payload = (flags & FLAG_GZIP) != 0
+                ? new DataInputStream(new BufferedInputStream(new GZIPInputStream(header)))
+                : header;
+        DimensionTable dimensions = DimensionTable.read(payload);
+        return decoder.read(payload, dimensions, version);
+    }
+
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift >= 35) {
+                throw new IOException("VarInt too long");
+            }
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    public static void writeUUID(DataOutput out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    public static UUID readUUID(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    //维度字符串表：每个维度只写一次，记录中只保存索引（0 表示无维度）
+    public static class DimensionTable {
+        private final Map<ResourceLocation, Integer> indices = new HashMap<>();
+        private final List<ResourceLocation> dimensions = new ArrayList<>();
+
+        public void writeDimension(DataOutput out, ResourceLocation dimension) throws IOException {
+            if (dimension == null) {
+                writeVarInt(out, 0);
+                return;
+            }
+            Integer index = indices.get(dimension);
+            if (index == null) {
+                dimensions.add(dimension);
+                index = dimensions.size();
+                indices.put(dimension, index);
+            }
+            writeVarInt(out, index);
+        }
+
+        public ResourceLocation readDimension(DataInput in) throws IOException {
+            int index = readVarInt(in);
+            if (index == 0) {
+                return null;
+            }
+            if (index > dimensions.size()) {
+                throw new IOException("Invalid dimension index " + index);
+            }
+            return dimensions.get(index - 1);
+        }
+
+        private void write(DataOutput out) throws IOException {
+            writeVarInt(out, dimensions.size());
+            for (ResourceLocation dimension : dimensions) {
+                out.writeUTF(dimension.toString());
+            }
+        }
+
+        private static DimensionTable read(DataInput in) throws IOException {
+            DimensionTable table = new DimensionTable();
+            int count = readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                ResourceLocation dimension = ResourceLocation.parse(in.readUTF());
+                table.dimensions.add(dimension);
+                table.indices.put(dimension, i + 1);
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.kicobicn.TPATools.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.kicobicn.TPATools.Commands.HomeHandler.Home;
+import com.kicobicn.TPATools.Commands.HomeHandler.HomeOperation;
+import com.kicobicn.TPATools.Commands.HomeHandler.PublicHomeInfo;
+import com.kicobicn.TPATools.Commands.PlayerNameCache;
+import com.kicobicn.TPATools.config.ModConfigs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * 文件存储：每个玩家一个分片 homes/<uuid>.json（或 .bin），公开和分享的家园索引存放在 homes/index.json（或 .bin）。
+ * 修改先追加到 homes/journal.log，超过 journal_compact_bytes 后把脏分片写成快照，写入成功后删除日志。
+ */
+public class FileHomeStore implements HomeStore {
+    private static final String INDEX_NAME = "index";
+    private static final String JSON_SUFFIX = ".json";
+    private static final String BINARY_SUFFIX = ".bin";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson JOURNAL_GSON = new Gson();
+
+    private final Source source;
+    //合并写入：修改只标记脏分片，压缩时落盘
+    private final WriteBehindWriter writer;
+    private final AppendOnlyJournal journal;
+    //IO 线程上读到另一种格式的分片，下次 tick 时标记转换
+    private final Queue<UUID> pendingConversions = new ConcurrentLinkedQueue<>();
+
+    public FileHomeStore(Source source) {
+        this.source = source;
+        this.writer = new WriteBehindWriter("homes", FileHomeStore::getHomesDir, this::serializeShard);
+        this.journal = new AppendOnlyJournal("home journal", () -> getHomesDir().resolve("journal.log"));
+    }
+
+    private static Path getHomesDir() {
+        return ModConfigs.getConfigDir().resolve("homes");
+    }
+
+    private static String shardSuffix() {
+        return ModConfigs.isBinaryStorage() ? BINARY_SUFFIX : JSON_SUFFIX;
+    }
+
+    private static String otherSuffix() {
+        return ModConfigs.isBinaryStorage() ? JSON_SUFFIX : BINARY_SUFFIX;
+    }
+
+    private static String shardFile(UUID owner) {
+        return owner + shardSuffix();
+    }
+
+    private static String indexFile() {
+        return INDEX_NAME + shardSuffix();
+    }
+
+    @Override
+    public IndexState loadIndex(Map<String, Map<String, PublicHomeInfo>> publicHomesOut,
+                                Map<UUID, Map<String, Home>> sharedHomesOut) throws IOException {
+        Path dir = getHomesDir();
+        Path file = dir.resolve(indexFile());
+        boolean binary = ModConfigs.isBinaryStorage();
+        IndexState state = IndexState.LOADED;
+        if (!Files.exists(file)) {
+            file = dir.resolve(INDEX_NAME + otherSuffix());
+            if (!Files.exists(file)) {
+                return IndexState.NEEDS_REBUILD;
+            }
+            binary = !binary;
+            // 另一种格式的索引：读入后由 saveAll 以当前格式重写并删除旧文件
+            state = IndexState.NEEDS_REWRITE;
+        }
+        try {
+            boolean complete;
+            if (binary) {
+                complete = BinaryCodec.decode(Files.readAllBytes(file), BinaryCodec.TYPE_PUBLIC_INDEX,
+                        (in, dimensions, version) -> HomeCodec.readIndex(in, dimensions, version, publicHomesOut, sharedHomesOut));
+            } else {
+                try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+                    complete = HomeCodec.readIndex(reader, publicHomesOut, sharedHomesOut);
+                }
+            }
+            return complete ? state : IndexState.NEEDS_REBUILD;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    //优先当前格式；只做文件读取，可以在 IO 线程上调用
+    @Override
+    public Map<String, Home> loadHomes(UUID owner) throws IOException {
+        Path dir = getHomesDir();
+        boolean binary = ModConfigs.isBinaryStorage();
+        Path file = dir.resolve(shardFile(owner));
+        if (!Files.exists(file)) {
+            file = dir.resolve(owner + otherSuffix());
+            if (!Files.exists(file)) {
+                return new HashMap<>();
+            }
+            binary = !binary;
+            pendingConversions.add(owner);
+        }
+        try {
+            if (binary) {
+                return BinaryCodec.decode(Files.readAllBytes(file), BinaryCodec.TYPE_HOMES, HomeCodec::readHomes);
+            }
+            try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+                return HomeCodec.readHomes(reader);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 错误信息中带上文件路径，便于管理员找到损坏的分片
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Set<UUID> listOwners() throws IOException {
+        Set<UUID> owners = new HashSet<>();
+        Path dir = getHomesDir();
+        if (!Files.isDirectory(dir)) {
+            return owners;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{json,bin}")) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+                if (baseName.equals(INDEX_NAME)) {
+                    continue;
+                }
+                try {
+                    owners.add(UUID.fromString(baseName));
+                } catch (IllegalArgumentException e) {
+                    ModConfigs.DebugLog.warn("Skipping unknown file in homes directory: {}", fileName);
+                }
+            }
+        }
+        return owners;
+    }
+
+    //回放上次压缩之后的修改记录，然后立即压缩
+    @Override
+    public void replay(Consumer<HomeOperation> applier) throws IOException {
+        int replayed = journal.replay(line -> {
+            try {
+                HomeOperation operation = JOURNAL_GSON.fromJson(line, HomeOperation.class);
+                if (operation != null && operation.op != null && operation.owner != null) {
+                    applier.accept(operation);
+                    markOperationDirty(operation);
+                }
+            } catch (JsonParseException e) {
+                ModConfigs.DebugLog.warn("Skipping malformed home journal record: {}", e.getMessage());
+            }
+        });
+        if (replayed > 0) {
+            ModConfigs.DebugLog.info("Replayed {} home journal records", replayed);
+            compact(true);
+        }
+    }
+
+    @Override
+    public void record(HomeOperation operation) {
+        journal.append(JOURNAL_GSON.toJson(operation));
+        markOperationDirty(operation);
+    }
+
+    private void markOperationDirty(HomeOperation operation) {
+        switch (operation.op) {
+            case HomeOperation.PUBLIC, HomeOperation.PRIVATE -> writer.markDirty(indexFile());
+            case HomeOperation.SET -> writer.markDirty(shardFile(operation.owner));
+            default -> {
+                writer.markDirty(shardFile(operation.owner));
+                writer.markDirty(indexFile());
+            }
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<UUID> owners) {
+        for (UUID owner : owners) {
+            writer.markDirty(shardFile(owner));
+        }
+        writer.markDirty(indexFile());
+        writer.markDirty(INDEX_NAME + otherSuffix());
+    }
+
+    @Override
+    public boolean hasPendingWrites(UUID owner) {
+        return writer.isDirty(shardFile(owner));
+    }
+
+    @Override
+    public void tick() {
+        UUID converted;
+        while ((converted = pendingConversions.poll()) != null) {
+            writer.markDirty(shardFile(converted));
+            writer.markDirty(converted + otherSuffix());
+        }
+        journal.tick();
+        if (journal.getSize() >= ModConfigs.JOURNAL_COMPACT_BYTES.get()) {
+            compact(false);
+        }
+    }
+
+    //立即压缩并等待写入（服务器关闭时调用）
+    @Override
+    public boolean flush() {
+        return compact(true);
+    }
+
+    //压缩：把脏分片写成快照，写入成功后删除日志；之后的记录写入新的日志
+    private boolean compact(boolean wait) {
+        journal.tick();
+        journal.resetSize();
+        if (wait) {
+            return writer.flush(journal::deleteFile);
+        }
+        writer.submit(journal::deleteFile);
+        return true;
+    }
+
+    @Override
+    public WriteStats getStats() {
+        return writer;
+    }
+
+    //复制分片数据，序列化在 IO 线程上进行；不是当前存储格式的文件返回 DELETE（格式转换后清理旧文件）
+    //未加载的玩家保留磁盘上的分片
+    private WriteBehindWriter.Snapshot serializeShard(String fileName) {
+        String suffix = fileName.endsWith(BINARY_SUFFIX) ? BINARY_SUFFIX : JSON_SUFFIX;
+        String baseName = fileName.substring(0, fileName.length() - suffix.length());
+        boolean binary = ModConfigs.isBinaryStorage();
+        if (baseName.equals(INDEX_NAME)) {
+            if (!suffix.equals(shardSuffix())) {
+                return WriteBehindWriter.DELETE;
+            }
+            Map<String, Map<String, PublicHomeInfo>> publicHomesData = snapshotPublicIndex();
+            Map<UUID, Map<String, Home>> sharedHomes = new HashMap<>();
+            for (Map.Entry<UUID, Map<String, Home>> entry : source.getSharedHomes().entrySet()) {
+                sharedHomes.put(entry.getKey(), copyHomes(entry.getValue()));
+            }
+            if (binary) {
+                return () -> BinaryCodec.encode(BinaryCodec.TYPE_PUBLIC_INDEX,
+                        (out, dimensions) -> HomeCodec.writeIndex(out, dimensions, publicHomesData, sharedHomes));
+            }
+            return () -> {
+                Map<String, Object> indexData = new LinkedHashMap<>();
+                indexData.put("publicHomesByOwner", publicHomesData);
+                indexData.put("sharedHomes", sharedHomes);
+                return GSON.toJson(indexData).getBytes(StandardCharsets.UTF_8);
+            };
+        }
+        Map<String, Home> loaded = source.getHomes(UUID.fromString(baseName));
+        if (loaded == null) {
+            return WriteBehindWriter.UNCHANGED;
+        }
+        if (!suffix.equals(shardSuffix()) || loaded.isEmpty()) {
+            return WriteBehindWriter.DELETE;
+        }
+        Map<String, Home> homes = copyHomes(loaded);
+        return binary
+                ? () -> BinaryCodec.encode(BinaryCodec.TYPE_HOMES, (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, homes))
+                : () -> GSON.toJson(homes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    //Home 的分享列表会被原地修改，需要复制；Position 只会整体替换，可以共享
+    private static Map<String, Home> copyHomes(Map<String, Home> homes) {
+        Map<String, Home> copy = new LinkedHashMap<>(Math.max(16, homes.size() * 2));
+        for (Map.Entry<String, Home> entry : homes.entrySet()) {
+            Home home = entry.getValue();
+            copy.put(entry.getKey(), new Home(home.position, new ArrayList<>(home.sharedPlayers)));
+        }
+        return copy;
+    }
+
+    private Map<String, Map<String, PublicHomeInfo>> snapshotPublicIndex() {
+        // 公开家园的保存格式
+        Map<String, Map<String, PublicHomeInfo>> publicHomesData = new HashMap<>();
+        for (Map.Entry<String, Map<String, PublicHomeInfo>> ownerEntry : source.getPublicHomes().entrySet()) {
+            String ownerUUID = ownerEntry.getKey();
+            Map<String, PublicHomeInfo> homes = ownerEntry.getValue();
+
+            Map<String, PublicHomeInfo> ownerPublicHomes = new HashMap<>();
+            for (Map.Entry<String, PublicHomeInfo> homeEntry : homes.entrySet()) {
+                String homeName = homeEntry.getKey();
+                PublicHomeInfo info = homeEntry.getValue();
+
+                // 确保所有者名称是最新的
+                String ownerName = info.ownerName != null ? info.ownerName
+                        : PlayerNameCache.getName(UUID.fromString(ownerUUID));
+
+                ownerPublicHomes.put(homeName, new PublicHomeInfo(
+                        UUID.fromString(ownerUUID), ownerName, homeName, info.position
+                ));
+            }
+            publicHomesData.put(ownerUUID, ownerPublicHomes);
+        }
+        return publicHomesData;
+    }
+}
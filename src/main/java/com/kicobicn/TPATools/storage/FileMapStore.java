@@ -0,0 +1,154 @@
+package com.kicobicn.TPATools.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.kicobicn.TPATools.config.ModConfigs;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 整个 Map 保存为配置目录下的一个文件。修改只标记文件，由 tick 按 flush_interval_seconds 合并写入。
+ * 提供二进制格式时按 storage.format 选择文件，另一种格式的旧文件读入后在下次写入时删除。
+ */
+public class FileMapStore<K, V> implements MapStore<K, V> {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    //可选的二进制格式
+    public static class BinaryFormat<K, V> {
+        public final String fileName;
+        public final byte type;
+        public final Encoder<K, V> encoder;
+        public final BinaryCodec.Decoder<Map<K, V>> decoder;
+
+        public BinaryFormat(String fileName, byte type, Encoder<K, V> encoder, BinaryCodec.Decoder<Map<K, V>> decoder) {
+            this.fileName = fileName;
+            this.type = type;
+            this.encoder = encoder;
+            this.decoder = decoder;
+        }
+    }
+
+    public interface Encoder<K, V> {
+        void write(DataOutputStream out, BinaryCodec.DimensionTable dimensions, Map<K, V> data) throws IOException;
+    }
+
+    private final String name;
+    private final String jsonFile;
+    private final Type jsonType;
+    private final BinaryFormat<K, V> binaryFormat;
+    private final Supplier<Map<K, V>> source;
+    private final WriteBehindWriter writer;
+
+    public FileMapStore(String name, String jsonFile, Type jsonType, BinaryFormat<K, V> binaryFormat, Supplier<Map<K, V>> source) {
+        this.name = name;
+        this.jsonFile = jsonFile;
+        this.jsonType = jsonType;
+        this.binaryFormat = binaryFormat;
+        this.source = source;
+        this.writer = new WriteBehindWriter(name, ModConfigs::getConfigDir, this::serialize);
+    }
+
+    private boolean useBinary() {
+        return binaryFormat != null && ModConfigs.isBinaryStorage();
+    }
+
+    private String currentFile() {
+        return useBinary() ? binaryFormat.fileName : jsonFile;
+    }
+
+    private String otherFile() {
+        if (binaryFormat == null) {
+            return null;
+        }
+        return useBinary() ? jsonFile : binaryFormat.fileName;
+    }
+
+    //只读取文件，不标记写入：加载线程上调用，转换由安装后的 saveAll 完成
+    @Override
+    public Loaded<K, V> load() throws IOException {
+        Path dir = ModConfigs.getConfigDir();
+        String fileName = currentFile();
+        String otherFile = otherFile();
+        boolean needsRewrite = false;
+        if (otherFile != null && Files.exists(dir.resolve(otherFile))) {
+            // 另一种格式的文件在重写时删除；当前格式不存在时先读入它再转换
+            needsRewrite = true;
+            if (!Files.exists(dir.resolve(fileName))) {
+                fileName = otherFile;
+            }
+        }
+        Path path = dir.resolve(fileName);
+        if (!Files.exists(path)) {
+            return new Loaded<>(new HashMap<>(), needsRewrite);
+        }
+        Map<K, V> loaded;
+        try {
+            if (fileName.equals(jsonFile)) {
+                loaded = GSON.fromJson(Files.readString(path), jsonType);
+            } else {
+                loaded = BinaryCodec.decode(Files.readAllBytes(path), binaryFormat.type, binaryFormat.decoder);
+            }
+        } catch (JsonParseException | IllegalStateException | IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        ModConfigs.DebugLog.info("Loaded {} from {}", name, fileName);
+        return new Loaded<>(loaded != null ? loaded : new HashMap<>(), needsRewrite);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        writer.markDirty(currentFile());
+    }
+
+    @Override
+    public void remove(K key) {
+        writer.markDirty(currentFile());
+    }
+
+    @Override
+    public void saveAll() {
+        writer.markDirty(currentFile());
+        String otherFile = otherFile();
+        if (otherFile != null) {
+            writer.markDirty(otherFile);
+        }
+    }
+
+    @Override
+    public void tick() {
+        writer.tick();
+    }
+
+    @Override
+    public boolean flush() {
+        return writer.flush();
+    }
+
+    @Override
+    public WriteStats getStats() {
+        return writer;
+    }
+
+    //复制数据，序列化在 IO 线程上进行；另一种格式的文件返回 DELETE
+    //值必须是不可变的或只会整体替换（位置、布尔值、不可变 Set），因此复制外层 Map 即可
+    private WriteBehindWriter.Snapshot serialize(String fileName) {
+        if (!fileName.equals(currentFile())) {
+            return WriteBehindWriter.DELETE;
+        }
+        Map<K, V> data = new HashMap<>(source.get());
+        if (useBinary()) {
+            BinaryFormat<K, V> format = binaryFormat;
+            return () -> BinaryCodec.encode(format.type, (out, dimensions) -> format.encoder.write(out, dimensions, data));
+        }
+        return () -> GSON.toJson(data).getBytes(StandardCharsets.UTF_8);
+    }
+}
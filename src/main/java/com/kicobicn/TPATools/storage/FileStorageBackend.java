@@ -0,0 +1,67 @@
+package com.kicobicn.TPATools.storage;
+
+import com.google.gson.reflect.TypeToken;
+import com.kicobicn.TPATools.Commands.BackHandler;
+import com.kicobicn.TPATools.Commands.GraveHandler;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * JSON（或二进制）文件存储，文件位于配置目录 config/tpatools 下。
+ */
+public class FileStorageBackend implements StorageBackend {
+    private final List<WriteStats> stats = new ArrayList<>();
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public HomeStore homes(HomeStore.Source source) {
+        HomeStore store = new FileHomeStore(source);
+        stats.add(store.getStats());
+        return store;
+    }
+
+    @Override
+    public MapStore<UUID, BackHandler.PlayerPosition> graves(Supplier<Map<UUID, BackHandler.PlayerPosition>> source) {
+        FileMapStore.BinaryFormat<UUID, BackHandler.PlayerPosition> binaryFormat = new FileMapStore.BinaryFormat<>(
+                "tpatool_graves.bin", BinaryCodec.TYPE_GRAVES, GraveHandler::writeGraves, GraveHandler::readGraves);
+        return register(new FileMapStore<UUID, BackHandler.PlayerPosition>("graves", "tpatool_graves.json",
+                new TypeToken<Map<UUID, BackHandler.PlayerPosition>>(){}.getType(), binaryFormat, source));
+    }
+
+    @Override
+    public MapStore<UUID, Boolean> toggles(Supplier<Map<UUID, Boolean>> source) {
+        return register(new FileMapStore<UUID, Boolean>("toggle states", "tpatool_toggles.json",
+                new TypeToken<Map<UUID, Boolean>>(){}.getType(), null, source));
+    }
+
+    @Override
+    public MapStore<UUID, Set<UUID>> locks(Supplier<Map<UUID, Set<UUID>>> source) {
+        return register(new FileMapStore<UUID, Set<UUID>>("locked players", "tpatool_locks.json",
+                new TypeToken<Map<UUID, Set<UUID>>>(){}.getType(), null, source));
+    }
+
+    @Override
+    public MapStore<String, Boolean> permissions(Supplier<Map<String, Boolean>> source) {
+        return register(new FileMapStore<String, Boolean>("command permissions", "tpatool.json",
+                new TypeToken<Map<String, Boolean>>(){}.getType(), null, source));
+    }
+
+    private <K, V> MapStore<K, V> register(MapStore<K, V> store) {
+        stats.add(store.getStats());
+        return store;
+    }
+
+    @Override
+    public List<WriteStats> getWriteStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,300 @@
+package com.kicobicn.TPATools.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kicobicn.TPATools.Commands.HomeHandler.Home;
+import com.kicobicn.TPATools.Commands.HomeHandler.PublicHomeInfo;
+import net.minecraft.resources.ResourceLocation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 家园数据的 JSON 流式读取和二进制编码，供文件存储和导入导出共用。
+ */
+public final class HomeCodec {
+    private HomeCodec() {
+    }
+
+    //流式读取 ownerUUID -> homeName -> Home
+    public static void readHomesByOwner(JsonReader reader, Map<UUID, Map<String, Home>> homesOut) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            UUID owner = UUID.fromString(reader.nextName());
+            Map<String, Home> homes = readHomes(reader);
+            if (!homes.isEmpty()) {
+                homesOut.put(owner, homes);
+            }
+        }
+        reader.endObject();
+    }
+
+    //索引格式 {"publicHomesByOwner": ..., "sharedHomes": ...}；旧格式的索引直接是 ownerUUID -> 公开家园
+    public static boolean readIndex(JsonReader reader, Map<String, Map<String, PublicHomeInfo>> publicHomesOut,
+                                    Map<UUID, Map<String, Home>> sharedHomesOut) throws IOException {
+        boolean complete = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (key.equals("publicHomesByOwner")) {
+                readPublicHomes(reader, publicHomesOut);
+            } else if (key.equals("sharedHomes")) {
+                readHomesByOwner(reader, sharedHomesOut);
+                complete = true;
+            } else {
+                readPublicOwner(reader, key, publicHomesOut);
+            }
+        }
+        reader.endObject();
+        return complete;
+    }
+
+    public static void writePosition(DataOutputStream out, BinaryCodec.DimensionTable dimensions, Home.Position position) throws IOException {
+        out.writeDouble(position.x);
+        out.writeDouble(position.y);
+        out.writeDouble(position.z);
+        out.writeFloat(position.xRot);
+        out.writeFloat(position.yRot);
+        dimensions.writeDimension(out, position.dimension);
+    }
+
+    public static Home.Position readPosition(DataInputStream in, BinaryCodec.DimensionTable dimensions) throws IOException {
+        double x = in.readDouble();
+        double y = in.readDouble();
+        double z = in.readDouble();
+        float xRot = in.readFloat();
+        float yRot = in.readFloat();
+        return new Home.Position(x, y, z, xRot, yRot, dimensions.readDimension(in));
+    }
+
+    //二进制分片：家园数量，然后每个家园的名称、坐标、维度索引和分享列表
+    public static void writeHomes(DataOutputStream out, BinaryCodec.DimensionTable dimensions, Map<String, Home> homes) throws IOException {
+        BinaryCodec.writeVarInt(out, homes.size());
+        for (Map.Entry<String, Home> entry : homes.entrySet()) {
+            Home home = entry.getValue();
+            out.writeUTF(entry.getKey());
+            writePosition(out, dimensions, home.position);
+            BinaryCodec.writeVarInt(out, home.sharedPlayers.size());
+            for (UUID shared : home.sharedPlayers) {
+                BinaryCodec.writeUUID(out, shared);
+            }
+        }
+    }
+
+    public static Map<String, Home> readHomes(DataInputStream in, BinaryCodec.DimensionTable dimensions, int version) throws IOException {
+        int count = BinaryCodec.readVarInt(in);
+        Map<String, Home> homes = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            String homeName = in.readUTF();
+            Home.Position position = readPosition(in, dimensions);
+            int sharedCount = BinaryCodec.readVarInt(in);
+            List<UUID> sharedPlayers = new ArrayList<>(sharedCount);
+            for (int j = 0; j < sharedCount; j++) {
+                sharedPlayers.add(BinaryCodec.readUUID(in));
+            }
+            homes.put(homeName, new Home(position, sharedPlayers));
+        }
+        return homes;
+    }
+
+    //二进制索引：公开家园（所有者 UUID、名称、家园名称和坐标），然后是每个所有者被分享的家园
+    public static void writeIndex(DataOutputStream out, BinaryCodec.DimensionTable dimensions,
+                                  Map<String, Map<String, PublicHomeInfo>> publicHomes,
+                                  Map<UUID, Map<String, Home>> sharedHomes) throws IOException {
+        BinaryCodec.writeVarInt(out, publicHomes.size());
+        for (Map.Entry<String, Map<String, PublicHomeInfo>> ownerEntry : publicHomes.entrySet()) {
+            BinaryCodec.writeUUID(out, UUID.fromString(ownerEntry.getKey()));
+            String ownerName = null;
+            for (PublicHomeInfo info : ownerEntry.getValue().values()) {
+                if (info.ownerName != null) {
+                    ownerName = info.ownerName;
+                    break;
+                }
+            }
+            out.writeUTF(ownerName != null ? ownerName : "");
+            BinaryCodec.writeVarInt(out, ownerEntry.getValue().size());
+            for (Map.Entry<String, PublicHomeInfo> homeEntry : ownerEntry.getValue().entrySet()) {
+                out.writeUTF(homeEntry.getKey());
+                Home.Position position = homeEntry.getValue().position;
+                out.writeBoolean(position != null);
+                if (position != null) {
+                    writePosition(out, dimensions, position);
+                }
+            }
+        }
+        BinaryCodec.writeVarInt(out, sharedHomes.size());
+        for (Map.Entry<UUID, Map<String, Home>> ownerEntry : sharedHomes.entrySet()) {
+            BinaryCodec.writeUUID(out, ownerEntry.getKey());
+            writeHomes(out, dimensions, ownerEntry.getValue());
+        }
+    }
+
+    //版本 1 的索引只有公开家园名称，返回 false 表示需要重建
+    public static boolean readIndex(DataInputStream in, BinaryCodec.DimensionTable dimensions, int version,
+                                    Map<String, Map<String, PublicHomeInfo>> publicHomesOut,
+                                    Map<UUID, Map<String, Home>> sharedHomesOut) throws IOException {
+        int ownerCount = BinaryCodec.readVarInt(in);
+        for (int i = 0; i < ownerCount; i++) {
+            UUID ownerUUID = BinaryCodec.readUUID(in);
+            String ownerName = in.readUTF();
+            int homeCount = BinaryCodec.readVarInt(in);
+            Map<String, PublicHomeInfo> ownerHomes = new HashMap<>();
+            for (int j = 0; j < homeCount; j++) {
+                String homeName = in.readUTF();
+                Home.Position position = version >= 2 && in.readBoolean() ? readPosition(in, dimensions) : null;
+                ownerHomes.put(homeName, new PublicHomeInfo(ownerUUID, ownerName.isEmpty() ? null : ownerName, homeName, position));
+            }
+            if (!ownerHomes.isEmpty()) {
+                publicHomesOut.put(ownerUUID.toString(), ownerHomes);
+            }
+        }
+        if (version < 2) {
+            return false;
+        }
+        int sharedOwnerCount = BinaryCodec.readVarInt(in);
+        for (int i = 0; i < sharedOwnerCount; i++) {
+            UUID ownerUUID = BinaryCodec.readUUID(in);
+            Map<String, Home> homes = readHomes(in, dimensions, version);
+            if (!homes.isEmpty()) {
+                sharedHomesOut.put(ownerUUID, homes);
+            }
+        }
+        return true;
+    }
+
+    //流式读取 homeName -> Home，格式与 Gson 序列化的 Map<String, Home> 相同
+    public static Map<String, Home> readHomes(JsonReader reader) throws IOException {
+        Map<String, Home> homes = new HashMap<>();
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return homes;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String homeName = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            Home.Position position = null;
+            List<UUID> sharedPlayers = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (field.equals("position")) {
+                    position = readPosition(reader);
+                } else if (field.equals("sharedPlayers")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        sharedPlayers.add(UUID.fromString(reader.nextString()));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (position != null) {
+                homes.put(homeName, new Home(position, sharedPlayers));
+            }
+        }
+        reader.endObject();
+        return homes;
+    }
+
+    public static Home.Position readPosition(JsonReader reader) throws IOException {
+        double x = 0, y = 0, z = 0;
+        float xRot = 0, yRot = 0;
+        ResourceLocation dimension = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            switch (field) {
+                case "x" -> x = reader.nextDouble();
+                case "y" -> y = reader.nextDouble();
+                case "z" -> z = reader.nextDouble();
+                case "xRot" -> xRot = (float) reader.nextDouble();
+                case "yRot" -> yRot = (float) reader.nextDouble();
+                case "dimension" -> dimension = readDimension(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Home.Position(x, y, z, xRot, yRot, dimension);
+    }
+
+    //Gson 把 ResourceLocation 写成 {"namespace":..,"path":..}，也兼容 "namespace:path" 字符串
+    public static ResourceLocation readDimension(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.STRING) {
+            return ResourceLocation.parse(reader.nextString());
+        }
+        String namespace = ResourceLocation.DEFAULT_NAMESPACE;
+        String path = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("namespace")) {
+                namespace = reader.nextString();
+            } else if (field.equals("path")) {
+                path = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return path != null ? ResourceLocation.fromNamespaceAndPath(namespace, path) : null;
+    }
+
+    //流式读取 ownerUUID -> homeName -> PublicHomeInfo
+    public static void readPublicHomes(JsonReader reader, Map<String, Map<String, PublicHomeInfo>> publicHomesOut) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            readPublicOwner(reader, reader.nextName(), publicHomesOut);
+        }
+        reader.endObject();
+    }
+
+    //读取一个所有者的公开家园 homeName -> {ownerName, position}
+    public static void readPublicOwner(JsonReader reader, String ownerKey, Map<String, Map<String, PublicHomeInfo>> publicHomesOut) throws IOException {
+        UUID ownerUUID = UUID.fromString(ownerKey);
+        Map<String, PublicHomeInfo> ownerHomes = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String homeName = reader.nextName();
+            String ownerName = null;
+            Home.Position position = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("ownerName") && reader.peek() == JsonToken.STRING) {
+                    ownerName = reader.nextString();
+                } else if (field.equals("position") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    position = readPosition(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            ownerHomes.put(homeName, new PublicHomeInfo(ownerUUID, ownerName, homeName, position));
+        }
+        reader.endObject();
+        if (!ownerHomes.isEmpty()) {
+            publicHomesOut.put(ownerKey, ownerHomes);
+        }
+    }
+}
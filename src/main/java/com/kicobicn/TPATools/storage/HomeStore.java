@@ -0,0 +1,65 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.Commands.HomeHandler.Home;
+import com.kicobicn.TPATools.Commands.HomeHandler.HomeOperation;
+import com.kicobicn.TPATools.Commands.HomeHandler.PublicHomeInfo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 家园存储。内存数据由 HomeHandler 持有并通过 Source 提供；
+ * 读取方法可以在任意线程调用，其余方法只在服务端线程调用。
+ */
+public interface HomeStore {
+    //HomeHandler 提供的内存数据，只在服务端线程访问
+    interface Source {
+        //已加载玩家的家园，未加载时返回 null
+        Map<String, Home> getHomes(UUID owner);
+
+        Map<String, Map<String, PublicHomeInfo>> getPublicHomes();
+
+        Map<UUID, Map<String, Home>> getSharedHomes();
+    }
+
+    //索引的读取结果
+    enum IndexState {
+        LOADED,
+        //读到的是另一种格式，安装后在服务端线程调用 saveAll 转换
+        NEEDS_REWRITE,
+        //索引缺失或过旧，需要读取全部玩家后重建
+        NEEDS_REBUILD
+    }
+
+    //读取常驻索引（公开和被分享的家园），不标记写入
+    IndexState loadIndex(Map<String, Map<String, PublicHomeInfo>> publicHomesOut,
+                      Map<UUID, Map<String, Home>> sharedHomesOut) throws IOException;
+
+    //读取一个玩家的家园，没有数据时返回空 Map
+    Map<String, Home> loadHomes(UUID owner) throws IOException;
+
+    //存储中有家园数据的全部玩家
+    Set<UUID> listOwners() throws IOException;
+
+    //回放上次未写入快照的修改
+    void replay(Consumer<HomeOperation> applier) throws IOException;
+
+    //记录一次已应用到内存的修改
+    void record(HomeOperation operation);
+
+    //以内存数据重写这些玩家（没有家的写为空）和整个索引，用于迁移、导入、转换和重建索引
+    void saveAll(Collection<UUID> owners);
+
+    //该玩家是否还有尚未提交的修改（有则不能从内存中淘汰）
+    boolean hasPendingWrites(UUID owner);
+
+    void tick();
+
+    boolean flush();
+
+    WriteStats getStats();
+}
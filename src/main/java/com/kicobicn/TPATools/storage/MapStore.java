@@ -0,0 +1,32 @@
+package com.kicobicn.TPATools.storage;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * 键值数据的存储（死亡位置、免打扰状态、锁定列表、命令权限）。
+ * 内存中的 Map 由调用方持有，修改后通过 put/remove 通知存储；写入方法只在服务端线程调用。
+ */
+public interface MapStore<K, V> {
+    //读取结果；needsRewrite 表示读到的是另一种格式，安装到内存后应在服务端线程调用 saveAll 转换
+    record Loaded<K, V>(Map<K, V> data, boolean needsRewrite) {
+    }
+
+    //读取全部记录，可以在加载线程上调用
+    Loaded<K, V> load() throws IOException;
+
+    //记录一条已写入内存的修改，value 之后不能再被修改
+    void put(K key, V value);
+
+    void remove(K key);
+
+    //以内存中的全部数据替换存储内容（导入和格式转换时调用）
+    void saveAll();
+
+    void tick();
+
+    //立即写入并等待，返回是否在 flush_deadline_ms 内完成
+    boolean flush();
+
+    WriteStats getStats();
+}
@@ -0,0 +1,304 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.Commands.HomeHandler.Home;
+import com.kicobicn.TPATools.Commands.HomeHandler.HomeOperation;
+import com.kicobicn.TPATools.Commands.HomeHandler.PublicHomeInfo;
+import net.minecraft.resources.ResourceLocation;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 数据库中的家园：homes 一行一个家，home_shares 一行一条分享，public_homes 一行一个公开家园。
+ * 每次修改直接转换为对应行的写入，因此不需要修改日志，也不需要单独保存常驻索引。
+ */
+public class SqlHomeStore implements HomeStore {
+    private static final String HOME_COLUMNS = "h.dimension, h.x, h.y, h.z, h.x_rot, h.y_rot";
+
+    private final SqlStorageBackend backend;
+    private final SqlStorageBackend.SqlStats stats;
+    private final Source source;
+    //每个玩家尚未提交的修改数量：服务端线程登记时增加，IO 线程提交成功后减少
+    private final Map<UUID, Integer> pendingOwners = new ConcurrentHashMap<>();
+
+    SqlHomeStore(SqlStorageBackend backend, SqlStorageBackend.SqlStats stats, Source source) {
+        this.backend = backend;
+        this.stats = stats;
+        this.source = source;
+    }
+
+    @Override
+    public IndexState loadIndex(Map<String, Map<String, PublicHomeInfo>> publicHomesOut,
+                                Map<UUID, Map<String, Home>> sharedHomesOut) throws IOException {
+        return backend.query(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet rows = statement.executeQuery("SELECT p.owner, p.name, p.owner_name, " + HOME_COLUMNS
+                        + " FROM public_homes p LEFT JOIN homes h ON h.owner = p.owner AND h.name = p.name")) {
+                    while (rows.next()) {
+                        UUID owner = UUID.fromString(rows.getString(1));
+                        String name = rows.getString(2);
+                        // homes 中没有对应的行时没有坐标
+                        Home.Position position = rows.getObject(5) == null ? null : readPosition(rows, 4);
+                        publicHomesOut.computeIfAbsent(owner.toString(), k -> new HashMap<>())
+                                .put(name, new PublicHomeInfo(owner, rows.getString(3), name, position));
+                    }
+                }
+                try (ResultSet rows = statement.executeQuery("SELECT s.owner, s.name, s.player, " + HOME_COLUMNS
+                        + " FROM home_shares s JOIN homes h ON h.owner = s.owner AND h.name = s.name ORDER BY s.owner, s.name")) {
+                    while (rows.next()) {
+                        Map<String, Home> ownerHomes = sharedHomesOut.computeIfAbsent(UUID.fromString(rows.getString(1)), k -> new HashMap<>());
+                        Home home = ownerHomes.get(rows.getString(2));
+                        if (home == null) {
+                            home = new Home(readPosition(rows, 4), new ArrayList<>());
+                            ownerHomes.put(rows.getString(2), home);
+                        }
+                        home.sharedPlayers.add(UUID.fromString(rows.getString(3)));
+                    }
+                }
+            }
+            return IndexState.LOADED;
+        });
+    }
+
+    @Override
+    public Map<String, Home> loadHomes(UUID owner) throws IOException {
+        return backend.query(connection -> {
+            Map<String, Home> homes = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT h.name, " + HOME_COLUMNS + " FROM homes h WHERE h.owner = ?")) {
+                statement.setString(1, owner.toString());
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        homes.put(rows.getString(1), new Home(readPosition(rows, 2), new ArrayList<>()));
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT name, player FROM home_shares WHERE owner = ?")) {
+                statement.setString(1, owner.toString());
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        Home home = homes.get(rows.getString(1));
+                        if (home != null) {
+                            home.sharedPlayers.add(UUID.fromString(rows.getString(2)));
+                        }
+                    }
+                }
+            }
+            return homes;
+        });
+    }
+
+    //从 firstColumn 开始依次是 dimension, x, y, z, x_rot, y_rot
+    private static Home.Position readPosition(ResultSet rows, int firstColumn) throws SQLException {
+        String dimension = rows.getString(firstColumn);
+        return new Home.Position(
+                rows.getDouble(firstColumn + 1), rows.getDouble(firstColumn + 2), rows.getDouble(firstColumn + 3),
+                rows.getFloat(firstColumn + 4), rows.getFloat(firstColumn + 5),
+                dimension != null ? ResourceLocation.parse(dimension) : null);
+    }
+
+    @Override
+    public Set<UUID> listOwners() throws IOException {
+        return backend.query(connection -> {
+            Set<UUID> owners = new HashSet<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT DISTINCT owner FROM homes")) {
+                while (rows.next()) {
+                    owners.add(UUID.fromString(rows.getString(1)));
+                }
+            }
+            return owners;
+        });
+    }
+
+    //每次修改都在事务中提交，没有需要回放的记录
+    @Override
+    public void replay(Consumer<HomeOperation> applier) {
+    }
+
+    //操作在服务端线程上转换为参数固定的语句，之后内存数据的变化不会影响排队中的写入
+    @Override
+    public void record(HomeOperation operation) {
+        String owner = operation.owner.toString();
+        List<UUID> owners = List.of(operation.owner);
+        String name = operation.name;
+        switch (operation.op) {
+            case HomeOperation.SET -> {
+                Home.Position position = operation.position;
+                enqueue(owners, connection -> {
+                    writeHome(connection, owner, name, position);
+                    SqlStorageBackend.deleteByKey(connection, "DELETE FROM home_shares WHERE owner = ? AND name = ?", owner, name);
+                });
+            }
+            case HomeOperation.REMOVE -> enqueue(owners, connection -> deleteHome(connection, owner, name));
+            case HomeOperation.RENAME -> {
+                // 与 applyOperation 一致：目标名称已存在时不改名
+                Map<String, Home> homes = source.getHomes(operation.owner);
+                if (homes == null || !homes.containsKey(operation.newName) || homes.containsKey(name)) {
+                    return;
+                }
+                String newName = operation.newName;
+                enqueue(owners, connection -> {
+                    for (String table : List.of("homes", "home_shares", "public_homes")) {
+                        try (PreparedStatement statement = connection.prepareStatement(
+                                "UPDATE " + table + " SET name = ? WHERE owner = ? AND name = ?")) {
+                            statement.setString(1, newName);
+                            statement.setString(2, owner);
+                            statement.setString(3, name);
+                            statement.executeUpdate();
+                        }
+                    }
+                });
+            }
+            case HomeOperation.SHARE -> {
+                String player = operation.player.toString();
+                enqueue(owners, connection -> {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "MERGE INTO home_shares (owner, name, player) KEY (owner, name, player) VALUES (?, ?, ?)")) {
+                        statement.setString(1, owner);
+                        statement.setString(2, name);
+                        statement.setString(3, player);
+                        statement.executeUpdate();
+                    }
+                });
+            }
+            case HomeOperation.UNSHARE -> {
+                if (operation.player == null) {
+                    enqueue(owners, connection -> SqlStorageBackend.deleteByKey(connection,
+                            "DELETE FROM home_shares WHERE owner = ? AND name = ?", owner, name));
+                } else {
+                    String player = operation.player.toString();
+                    enqueue(owners, connection -> SqlStorageBackend.deleteByKey(connection,
+                            "DELETE FROM home_shares WHERE owner = ? AND name = ? AND player = ?", owner, name, player));
+                }
+            }
+            case HomeOperation.PUBLIC -> {
+                String ownerName = operation.ownerName;
+                enqueue(owners, connection -> writePublicHome(connection, owner, name, ownerName));
+            }
+            case HomeOperation.PRIVATE -> enqueue(owners, connection -> SqlStorageBackend.deleteByKey(connection,
+                    "DELETE FROM public_homes WHERE owner = ? AND name = ?", owner, name));
+            default -> {
+            }
+        }
+    }
+
+    //重写这些玩家的全部行和整个公开家园表；未加载的玩家保持不变
+    @Override
+    public void saveAll(Collection<UUID> owners) {
+        Map<String, Map<String, Home>> homesSnapshot = new HashMap<>();
+        for (UUID owner : owners) {
+            Map<String, Home> homes = source.getHomes(owner);
+            if (homes == null) {
+                continue;
+            }
+            Map<String, Home> copy = new HashMap<>();
+            for (Map.Entry<String, Home> entry : homes.entrySet()) {
+                Home home = entry.getValue();
+                copy.put(entry.getKey(), new Home(home.position, new ArrayList<>(home.sharedPlayers)));
+            }
+            homesSnapshot.put(owner.toString(), copy);
+        }
+        List<PublicHomeInfo> publicSnapshot = new ArrayList<>();
+        for (Map<String, PublicHomeInfo> homes : source.getPublicHomes().values()) {
+            publicSnapshot.addAll(homes.values());
+        }
+        List<UUID> owners = new ArrayList<>();
+        for (String owner : homesSnapshot.keySet()) {
+            owners.add(UUID.fromString(owner));
+        }
+        enqueue(owners, connection -> {
+            for (Map.Entry<String, Map<String, Home>> ownerEntry : homesSnapshot.entrySet()) {
+                String owner = ownerEntry.getKey();
+                SqlStorageBackend.deleteByKey(connection, "DELETE FROM homes WHERE owner = ?", owner);
+                SqlStorageBackend.deleteByKey(connection, "DELETE FROM home_shares WHERE owner = ?", owner);
+                for (Map.Entry<String, Home> entry : ownerEntry.getValue().entrySet()) {
+                    writeHome(connection, owner, entry.getKey(), entry.getValue().position);
+                    for (UUID player : entry.getValue().sharedPlayers) {
+                        try (PreparedStatement statement = connection.prepareStatement(
+                                "INSERT INTO home_shares (owner, name, player) VALUES (?, ?, ?)")) {
+                            statement.setString(1, owner);
+                            statement.setString(2, entry.getKey());
+                            statement.setString(3, player.toString());
+                            statement.executeUpdate();
+                        }
+                    }
+                }
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM public_homes");
+            }
+            for (PublicHomeInfo info : publicSnapshot) {
+                writePublicHome(connection, info.ownerUUID.toString(), info.homeName, info.ownerName);
+            }
+        });
+    }
+
+    private static void writeHome(Connection connection, String owner, String name, Home.Position position) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "MERGE INTO homes (owner, name, dimension, x, y, z, x_rot, y_rot) KEY (owner, name) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, owner);
+            statement.setString(2, name);
+            statement.setString(3, position.dimension != null ? position.dimension.toString() : null);
+            statement.setDouble(4, position.x);
+            statement.setDouble(5, position.y);
+            statement.setDouble(6, position.z);
+            statement.setFloat(7, position.xRot);
+            statement.setFloat(8, position.yRot);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void writePublicHome(Connection connection, String owner, String name, String ownerName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "MERGE INTO public_homes (owner, name, owner_name) KEY (owner, name) VALUES (?, ?, ?)")) {
+            statement.setString(1, owner);
+            statement.setString(2, name);
+            statement.setString(3, ownerName);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void deleteHome(Connection connection, String owner, String name) throws SQLException {
+        for (String table : List.of("homes", "home_shares", "public_homes")) {
+            SqlStorageBackend.deleteByKey(connection, "DELETE FROM " + table + " WHERE owner = ? AND name = ?", owner, name);
+        }
+    }
+
+    @Override
+    public boolean hasPendingWrites(UUID owner) {
+        return pendingOwners.containsKey(owner);
+    }
+
+    //登记一次修改并记录涉及的玩家，提交成功前这些玩家不能从内存中淘汰
+    private void enqueue(Collection<UUID> owners, SqlStorageBackend.SqlTask task) {
+        List<UUID> affected = List.copyOf(owners);
+        for (UUID owner : affected) {
+            pendingOwners.merge(owner, 1, Integer::sum);
+        }
+        backend.enqueue(stats, task, () -> {
+            for (UUID owner : affected) {
+                pendingOwners.computeIfPresent(owner, (key, count) -> count > 1 ? count - 1 : null);
+            }
+        });
+    }
+
+    @Override
+    public void tick() {
+        backend.tick();
+    }
+
+    @Override
+    public boolean flush() {
+        return backend.flush();
+    }
+
+    @Override
+    public WriteStats getStats() {
+        return stats;
+    }
+}
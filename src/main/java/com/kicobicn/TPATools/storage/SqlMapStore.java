@@ -0,0 +1,95 @@
+package com.kicobicn.TPATools.storage;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 一张表保存一个 Map，每次修改只写入对应的行。
+ */
+public class SqlMapStore<K, V> implements MapStore<K, V> {
+    //键值与表中行的对应关系，方法在 IO 线程上调用
+    public interface Mapping<K, V> {
+        String table();
+
+        void readAll(Connection connection, Map<K, V> out) throws SQLException;
+
+        void write(Connection connection, K key, V value) throws SQLException;
+
+        void delete(Connection connection, K key) throws SQLException;
+
+        //可变的值在服务端线程上复制一份再交给 IO 线程
+        default V snapshot(V value) {
+            return value;
+        }
+    }
+
+    private final SqlStorageBackend backend;
+    private final SqlStorageBackend.SqlStats stats;
+    private final Supplier<Map<K, V>> source;
+    private final Mapping<K, V> mapping;
+
+    SqlMapStore(SqlStorageBackend backend, SqlStorageBackend.SqlStats stats, Supplier<Map<K, V>> source, Mapping<K, V> mapping) {
+        this.backend = backend;
+        this.stats = stats;
+        this.source = source;
+        this.mapping = mapping;
+    }
+
+    @Override
+    public Loaded<K, V> load() throws IOException {
+        return backend.query(connection -> {
+            Map<K, V> loaded = new HashMap<>();
+            mapping.readAll(connection, loaded);
+            return new Loaded<>(loaded, false);
+        });
+    }
+
+    @Override
+    public void put(K key, V value) {
+        V copy = mapping.snapshot(value);
+        backend.enqueue(stats, connection -> mapping.write(connection, key, copy));
+    }
+
+    @Override
+    public void remove(K key) {
+        backend.enqueue(stats, connection -> mapping.delete(connection, key));
+    }
+
+    @Override
+    public void saveAll() {
+        List<Map.Entry<K, V>> rows = new ArrayList<>();
+        for (Map.Entry<K, V> entry : source.get().entrySet()) {
+            rows.add(Map.entry(entry.getKey(), mapping.snapshot(entry.getValue())));
+        }
+        backend.enqueue(stats, connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM " + mapping.table());
+            }
+            for (Map.Entry<K, V> row : rows) {
+                mapping.write(connection, row.getKey(), row.getValue());
+            }
+        });
+    }
+
+    @Override
+    public void tick() {
+        backend.tick();
+    }
+
+    @Override
+    public boolean flush() {
+        return backend.flush();
+    }
+
+    @Override
+    public WriteStats getStats() {
+        return stats;
+    }
+}
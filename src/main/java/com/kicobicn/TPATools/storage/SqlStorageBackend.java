@@ -0,0 +1,415 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.Commands.BackHandler;
+import com.kicobicn.TPATools.config.ModConfigs;
+import net.minecraft.resources.ResourceLocation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 嵌入式 H2 数据库存储（config/tpatools/tpatools.mv.db）。
+ * 每次修改对应一条按主键的 upsert 或 delete，同一 tick 内的修改在 IO 线程上合并为一个事务提交。
+ * 提交失败的修改保留下来，按原来的顺序与之后的修改一起重试。连接只在 IO 线程上使用。
+ */
+public class SqlStorageBackend implements StorageBackend {
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS homes (owner VARCHAR(36) NOT NULL, name VARCHAR NOT NULL, dimension VARCHAR,"
+                    + " x DOUBLE PRECISION NOT NULL, y DOUBLE PRECISION NOT NULL, z DOUBLE PRECISION NOT NULL,"
+                    + " x_rot REAL NOT NULL, y_rot REAL NOT NULL, PRIMARY KEY (owner, name))",
+            "CREATE TABLE IF NOT EXISTS home_shares (owner VARCHAR(36) NOT NULL, name VARCHAR NOT NULL,"
+                    + " player VARCHAR(36) NOT NULL, PRIMARY KEY (owner, name, player))",
+            // "分享给我的家" 由内存中的反向索引提供，不需要按 player 查询；删除旧版本建立的索引
+            "DROP INDEX IF EXISTS home_shares_player",
+            "CREATE TABLE IF NOT EXISTS public_homes (owner VARCHAR(36) NOT NULL, name VARCHAR NOT NULL,"
+                    + " owner_name VARCHAR, PRIMARY KEY (owner, name))",
+            "CREATE TABLE IF NOT EXISTS graves (player VARCHAR(36) PRIMARY KEY, dimension VARCHAR,"
+                    + " x DOUBLE PRECISION NOT NULL, y DOUBLE PRECISION NOT NULL, z DOUBLE PRECISION NOT NULL,"
+                    + " y_rot REAL NOT NULL, x_rot REAL NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS tpa_toggles (player VARCHAR(36) PRIMARY KEY, disabled BOOLEAN NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS tpa_locks (player VARCHAR(36) NOT NULL, locked VARCHAR(36) NOT NULL,"
+                    + " PRIMARY KEY (player, locked))",
+            "CREATE TABLE IF NOT EXISTS command_permissions (command VARCHAR PRIMARY KEY, need_op BOOLEAN NOT NULL)"
+    };
+
+    //在 IO 线程上执行的语句
+    @FunctionalInterface
+    public interface SqlTask {
+        void run(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface SqlQuery<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    //单个存储的写入统计：一次事务中该存储的全部修改算作一次写入
+    public static class SqlStats implements WriteStats {
+        private final String name;
+        private final AtomicLong mutationCount = new AtomicLong();
+        private final AtomicLong writeCount = new AtomicLong();
+
+        SqlStats(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getWriteCount() {
+            return writeCount.get();
+        }
+
+        @Override
+        public long getCoalescedWrites() {
+            return mutationCount.get() - writeCount.get();
+        }
+    }
+
+    //排队中的修改；onCommitted 在事务提交成功后于 IO 线程上调用，可以为 null
+    private record QueuedTask(SqlTask task, Runnable onCommitted) {
+    }
+
+    private final Connection connection;
+    private final List<QueuedTask> pending = new ArrayList<>();
+    private final Set<SqlStats> pendingStats = new LinkedHashSet<>();
+    private final List<WriteStats> stats = new ArrayList<>();
+    private Future<?> lastBatch = CompletableFuture.completedFuture(null);
+    //提交失败、等待重试的修改，只在 IO 线程上访问
+    private final List<QueuedTask> failedTasks = new ArrayList<>();
+    private volatile int failedTaskCount;
+    private long lastRetryTime;
+
+    private SqlStorageBackend(Connection connection) {
+        this.connection = connection;
+    }
+
+    //打开（或创建）数据库文件并建表；databaseFile 不含 .mv.db 后缀
+    public static SqlStorageBackend open(Path databaseFile) throws IOException {
+        String url = "jdbc:h2:file:" + databaseFile.toAbsolutePath();
+        Connection connection = WriteBehindWriter.callOnIOThread(() -> {
+            Connection opened = new org.h2.Driver().connect(url, new Properties());
+            if (opened == null) {
+                throw new SQLException("No H2 driver for " + url);
+            }
+            try (Statement statement = opened.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            return opened;
+        });
+        ModConfigs.DebugLog.info("Opened database {}", url);
+        return new SqlStorageBackend(connection);
+    }
+
+    @Override
+    public String getName() {
+        return "h2";
+    }
+
+    //在 IO 线程上查询并等待结果
+    public <T> T query(SqlQuery<T> query) throws IOException {
+        return WriteBehindWriter.callOnIOThread(() -> query.run(connection));
+    }
+
+    //登记一次修改，在本 tick 结束时随事务提交
+    public void enqueue(SqlStats owner, SqlTask task) {
+        enqueue(owner, task, null);
+    }
+
+    //同上，提交成功后在 IO 线程上调用 onCommitted（失败重试时要等到重试成功）
+    public void enqueue(SqlStats owner, SqlTask task, Runnable onCommitted) {
+        pending.add(new QueuedTask(task, onCommitted));
+        pendingStats.add(owner);
+        owner.mutationCount.incrementAndGet();
+    }
+
+    //把本 tick 的修改作为一个事务交给 IO 线程；没有新修改时按 flush_interval_seconds 重试失败的修改
+    public void tick() {
+        if (pending.isEmpty()) {
+            long now = System.currentTimeMillis();
+            if (failedTaskCount == 0 || now - lastRetryTime < ModConfigs.FLUSH_INTERVAL_SECONDS.get() * 1000L) {
+                return;
+            }
+            lastRetryTime = now;
+        }
+        List<QueuedTask> batch = new ArrayList<>(pending);
+        pending.clear();
+        for (SqlStats owner : pendingStats) {
+            owner.writeCount.incrementAndGet();
+        }
+        pendingStats.clear();
+        lastBatch = CompletableFuture.runAsync(() -> runBatch(batch), WriteBehindWriter.ioExecutor());
+    }
+
+    //在 IO 线程上执行：先前失败的修改排在前面，与本批一起提交；失败时整批保留等待重试
+    private void runBatch(List<QueuedTask> batch) {
+        List<QueuedTask> tasks = batch;
+        if (!failedTasks.isEmpty()) {
+            tasks = new ArrayList<>(failedTasks);
+            tasks.addAll(batch);
+        }
+        try {
+            connection.setAutoCommit(false);
+            for (QueuedTask task : tasks) {
+                task.task().run(connection);
+            }
+            connection.commit();
+            failedTasks.clear();
+            for (QueuedTask task : tasks) {
+                if (task.onCommitted() != null) {
+                    task.onCommitted().run();
+                }
+            }
+        } catch (Exception e) {
+            failedTasks.addAll(batch);
+            ModConfigs.DebugLog.error("Failed to write {} database changes, will retry: {}", tasks.size(), e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                ModConfigs.DebugLog.error("Failed to roll back database changes: {}", rollbackError.getMessage());
+            }
+        } finally {
+            failedTaskCount = failedTasks.size();
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                ModConfigs.DebugLog.error("Failed to restore auto-commit: {}", e.getMessage());
+            }
+        }
+    }
+
+    //提交并等待，最多等待 flush_deadline_ms；返回是否全部提交成功
+    public boolean flush() {
+        lastRetryTime = 0;
+        tick();
+        long deadline = ModConfigs.FLUSH_DEADLINE_MS.get();
+        try {
+            lastBatch.get(deadline, TimeUnit.MILLISECONDS);
+            if (failedTaskCount > 0) {
+                ModConfigs.DebugLog.error("{} database changes could not be written", failedTaskCount);
+                return false;
+            }
+            return true;
+        } catch (TimeoutException e) {
+            ModConfigs.DebugLog.error("Database writes did not finish within {} ms", deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            ModConfigs.DebugLog.error("Database writes failed: {}", e.getCause().getMessage());
+        }
+        return false;
+    }
+
+    private SqlStats createStats(String name) {
+        SqlStats created = new SqlStats(name);
+        stats.add(created);
+        return created;
+    }
+
+    @Override
+    public HomeStore homes(HomeStore.Source source) {
+        return new SqlHomeStore(this, createStats("homes"), source);
+    }
+
+    @Override
+    public MapStore<UUID, BackHandler.PlayerPosition> graves(Supplier<Map<UUID, BackHandler.PlayerPosition>> source) {
+        return new SqlMapStore<UUID, BackHandler.PlayerPosition>(this, createStats("graves"), source, new SqlMapStore.Mapping<UUID, BackHandler.PlayerPosition>() {
+            @Override
+            public String table() {
+                return "graves";
+            }
+
+            @Override
+            public void readAll(Connection connection, Map<UUID, BackHandler.PlayerPosition> out) throws SQLException {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rows = statement.executeQuery("SELECT player, dimension, x, y, z, y_rot, x_rot FROM graves")) {
+                    while (rows.next()) {
+                        String dimension = rows.getString(2);
+                        out.put(UUID.fromString(rows.getString(1)), new BackHandler.PlayerPosition(
+                                dimension != null ? ResourceLocation.parse(dimension) : null,
+                                rows.getDouble(3), rows.getDouble(4), rows.getDouble(5),
+                                rows.getFloat(6), rows.getFloat(7)));
+                    }
+                }
+            }
+
+            @Override
+            public void write(Connection connection, UUID player, BackHandler.PlayerPosition pos) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "MERGE INTO graves (player, dimension, x, y, z, y_rot, x_rot) KEY (player) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                    statement.setString(1, player.toString());
+                    statement.setString(2, pos.dimension != null ? pos.dimension.toString() : null);
+                    statement.setDouble(3, pos.x);
+                    statement.setDouble(4, pos.y);
+                    statement.setDouble(5, pos.z);
+                    statement.setFloat(6, pos.yRot);
+                    statement.setFloat(7, pos.xRot);
+                    statement.executeUpdate();
+                }
+            }
+
+            @Override
+            public void delete(Connection connection, UUID player) throws SQLException {
+                deleteByKey(connection, "DELETE FROM graves WHERE player = ?", player.toString());
+            }
+        });
+    }
+
+    @Override
+    public MapStore<UUID, Boolean> toggles(Supplier<Map<UUID, Boolean>> source) {
+        return new SqlMapStore<UUID, Boolean>(this, createStats("toggle states"), source, new SqlMapStore.Mapping<UUID, Boolean>() {
+            @Override
+            public String table() {
+                return "tpa_toggles";
+            }
+
+            @Override
+            public void readAll(Connection connection, Map<UUID, Boolean> out) throws SQLException {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rows = statement.executeQuery("SELECT player, disabled FROM tpa_toggles")) {
+                    while (rows.next()) {
+                        out.put(UUID.fromString(rows.getString(1)), rows.getBoolean(2));
+                    }
+                }
+            }
+
+            @Override
+            public void write(Connection connection, UUID player, Boolean disabled) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "MERGE INTO tpa_toggles (player, disabled) KEY (player) VALUES (?, ?)")) {
+                    statement.setString(1, player.toString());
+                    statement.setBoolean(2, disabled);
+                    statement.executeUpdate();
+                }
+            }
+
+            @Override
+            public void delete(Connection connection, UUID player) throws SQLException {
+                deleteByKey(connection, "DELETE FROM tpa_toggles WHERE player = ?", player.toString());
+            }
+        });
+    }
+
+    @Override
+    public MapStore<UUID, Set<UUID>> locks(Supplier<Map<UUID, Set<UUID>>> source) {
+        return new SqlMapStore<UUID, Set<UUID>>(this, createStats("locked players"), source, new SqlMapStore.Mapping<UUID, Set<UUID>>() {
+            @Override
+            public String table() {
+                return "tpa_locks";
+            }
+
+            @Override
+            public void readAll(Connection connection, Map<UUID, Set<UUID>> out) throws SQLException {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rows = statement.executeQuery("SELECT player, locked FROM tpa_locks")) {
+                    while (rows.next()) {
+                        out.computeIfAbsent(UUID.fromString(rows.getString(1)), k -> new HashSet<>())
+                                .add(UUID.fromString(rows.getString(2)));
+                    }
+                }
+            }
+
+            //锁定列表按玩家整体替换
+            @Override
+            public void write(Connection connection, UUID player, Set<UUID> locked) throws SQLException {
+                delete(connection, player);
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO tpa_locks (player, locked) VALUES (?, ?)")) {
+                    for (UUID target : locked) {
+                        statement.setString(1, player.toString());
+                        statement.setString(2, target.toString());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+
+            @Override
+            public void delete(Connection connection, UUID player) throws SQLException {
+                deleteByKey(connection, "DELETE FROM tpa_locks WHERE player = ?", player.toString());
+            }
+
+            @Override
+            public Set<UUID> snapshot(Set<UUID> locked) {
+                return Set.copyOf(locked);
+            }
+        });
+    }
+
+    @Override
+    public MapStore<String, Boolean> permissions(Supplier<Map<String, Boolean>> source) {
+        return new SqlMapStore<String, Boolean>(this, createStats("command permissions"), source, new SqlMapStore.Mapping<String, Boolean>() {
+            @Override
+            public String table() {
+                return "command_permissions";
+            }
+
+            @Override
+            public void readAll(Connection connection, Map<String, Boolean> out) throws SQLException {
+                try (Statement statement = connection.createStatement();
+                     ResultSet rows = statement.executeQuery("SELECT command, need_op FROM command_permissions")) {
+                    while (rows.next()) {
+                        out.put(rows.getString(1), rows.getBoolean(2));
+                    }
+                }
+            }
+
+            @Override
+            public void write(Connection connection, String command, Boolean needOp) throws SQLException {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "MERGE INTO command_permissions (command, need_op) KEY (command) VALUES (?, ?)")) {
+                    statement.setString(1, command);
+                    statement.setBoolean(2, needOp);
+                    statement.executeUpdate();
+                }
+            }
+
+            @Override
+            public void delete(Connection connection, String command) throws SQLException {
+                deleteByKey(connection, "DELETE FROM command_permissions WHERE command = ?", command);
+            }
+        });
+    }
+
+    static void deleteByKey(Connection connection, String sql, String... keys) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < keys.length; i++) {
+                statement.setString(i + 1, keys[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public List<WriteStats> getWriteStats() {
+        return stats;
+    }
+
+    //关闭连接；调用前各存储已经 flush
+    @Override
+    public void close() {
+        flush();
+        try {
+            WriteBehindWriter.callOnIOThread(() -> {
+                connection.close();
+                return null;
+            });
+        } catch (IOException e) {
+            ModConfigs.DebugLog.error("Failed to close database: {}", e.getMessage());
+        }
+    }
+}
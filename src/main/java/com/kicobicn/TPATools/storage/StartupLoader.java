@@ -0,0 +1,114 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 服务器启动时并行读取各个存储：读取在后台线程池上同时进行，
+ * 读完的数据按登记顺序回到调用线程（服务端线程）安装到内存中。
+ * 每个存储单独计时和报告错误，失败或超时的存储不安装数据。
+ */
+public class StartupLoader {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int MAX_THREADS = 4;
+
+    private static class Task<T> {
+        final String name;
+        final Callable<T> read;
+        final Consumer<T> install;
+        CompletableFuture<T> future;
+        volatile long readNanos;
+
+        Task(String name, Callable<T> read, Consumer<T> install) {
+            this.name = name;
+            this.read = read;
+            this.install = install;
+        }
+
+        void submit(Executor executor) {
+            future = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return read.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    readNanos = System.nanoTime() - start;
+                }
+            }, executor);
+        }
+
+        void install(T data) {
+            install.accept(data);
+        }
+    }
+
+    private final List<Task<?>> tasks = new ArrayList<>();
+
+    //登记一个存储：read 在后台线程上执行，只能读取不能修改共享数据；install 在服务端线程上执行
+    public <T> void add(String name, Callable<T> read, Consumer<T> install) {
+        tasks.add(new Task<>(name, read, install));
+    }
+
+    //同时开始全部读取，最多等待 timeoutMillis，返回成功加载的存储数量
+    public int run(long timeoutMillis) {
+        long start = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, tasks.size())), runnable -> {
+            Thread thread = new Thread(runnable, "TPATools-Load-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int loaded = 0;
+        try {
+            for (Task<?> task : tasks) {
+                task.submit(executor);
+            }
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            for (Task<?> task : tasks) {
+                if (await(task, deadline, timeoutMillis)) {
+                    loaded++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        ModConfigs.DebugLog.info("Loaded {}/{} stores in {} ms", loaded, tasks.size(), (System.nanoTime() - start) / 1_000_000);
+        return loaded;
+    }
+
+    private static <T> boolean await(Task<T> task, long deadline, long timeoutMillis) {
+        T data;
+        try {
+            data = task.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            task.future.cancel(true);
+            LOGGER.error("Loading {} did not finish within {} ms, starting without it", task.name, timeoutMillis);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while loading {}, starting without it", task.name);
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.error("Failed to load {}, starting without it", task.name, e.getCause());
+            return false;
+        }
+        long installStart = System.nanoTime();
+        try {
+            task.install(data);
+        } catch (RuntimeException e) {
+            LOGGER.error("Failed to install {}", task.name, e);
+            return false;
+        }
+        ModConfigs.DebugLog.info("Loaded {}: read {} ms, installed {} ms", task.name,
+                task.readNanos / 1_000_000, (System.nanoTime() - installStart) / 1_000_000);
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+
+/**
+ * 当前使用的存储后端，服务器启动时按 storage.backend 配置打开，关闭时释放。
+ */
+public final class Storage {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static StorageBackend backend;
+
+    private Storage() {
+    }
+
+    //打开配置的后端；数据库无法打开时退回 JSON 文件存储
+    public static void open() {
+        close();
+        if (ModConfigs.isSqlStorage()) {
+            try {
+                backend = SqlStorageBackend.open(ModConfigs.getConfigDir().resolve("tpatools"));
+            } catch (IOException | LinkageError e) {
+                LOGGER.error("Failed to open database storage, falling back to JSON files", e);
+            }
+        }
+        if (backend == null) {
+            backend = new FileStorageBackend();
+        }
+        ModConfigs.DebugLog.info("Using {} storage backend", backend.getName());
+    }
+
+    public static StorageBackend get() {
+        if (backend == null) {
+            open();
+        }
+        return backend;
+    }
+
+    //在全部存储写入完成后调用
+    public static void close() {
+        if (backend != null) {
+            backend.close();
+            backend = null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.Commands.BackHandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * 存储后端：为各个处理器创建存储，source 返回处理器持有的内存数据。
+ * 每次服务器启动创建一个后端，关闭时在全部存储写入后调用 close。
+ */
+public interface StorageBackend {
+    String getName();
+
+    HomeStore homes(HomeStore.Source source);
+
+    MapStore<UUID, BackHandler.PlayerPosition> graves(Supplier<Map<UUID, BackHandler.PlayerPosition>> source);
+
+    MapStore<UUID, Boolean> toggles(Supplier<Map<UUID, Boolean>> source);
+
+    MapStore<UUID, Set<UUID>> locks(Supplier<Map<UUID, Set<UUID>>> source);
+
+    MapStore<String, Boolean> permissions(Supplier<Map<String, Boolean>> source);
+
+    //已创建的存储的写入统计
+    List<WriteStats> getWriteStats();
+
+    void close();
+}
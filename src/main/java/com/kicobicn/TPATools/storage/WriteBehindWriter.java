@@ -0,0 +1,252 @@
+package com.kicobicn.TPATools.storage;
+
+import com.kicobicn.TPATools.config.ModConfigs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 延迟合并写入：修改只标记脏文件，由服务端 tick 每隔 flush_interval_seconds 取一次快照，
+ * 再交给后台 IO 线程序列化并原子写入。快照（数据副本）在服务端线程生成，因此数据结构本身不需要加锁。
+ * 一个 writer 管理一个目录下的若干文件，只有被标记的文件会被重写；写入失败的文件重新标记，下次再写。
+ */
+public class WriteBehindWriter implements WriteStats {
+    // 所有存储共用一个 IO 线程，保证写入顺序
+    private static volatile Thread ioThread;
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TPATools-IO");
+        thread.setDaemon(true);
+        ioThread = thread;
+        return thread;
+    });
+
+    /**
+     * 服务端线程上取得的数据副本；serialize 在 IO 线程上执行，不能再读取服务端的数据结构。
+     * 返回 null 表示删除该文件。
+     */
+    public interface Snapshot {
+        byte[] serialize() throws IOException;
+    }
+
+    //snapshot 返回该值表示保留文件现有内容，不写入也不删除
+    public static final Snapshot UNCHANGED = () -> {
+        throw new IllegalStateException("UNCHANGED is not serialized");
+    };
+    public static final Snapshot DELETE = () -> null;
+
+    private final String name;
+    private final Supplier<Path> directory;
+    private final Function<String, Snapshot> snapshot;
+
+    private final Set<String> dirtyFiles = new LinkedHashSet<>();
+    //已提交、IO 线程尚未写完的文件及其次数
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    //IO 线程写入失败的文件，由服务端线程取回重新标记
+    private final Queue<String> failedFiles = new ConcurrentLinkedQueue<>();
+    //写入失败后还没有成功写过的文件，只在 IO 线程上访问；不为空时不执行 onWritten
+    private final Set<String> unresolvedFiles = new HashSet<>();
+    private long lastFlushTime;
+    private Future<?> lastWrite = CompletableFuture.completedFuture(null);
+
+    private final AtomicLong markCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    //snapshot 在服务端线程上调用，返回文件数据的副本
+    public WriteBehindWriter(String name, Supplier<Path> directory, Function<String, Snapshot> snapshot) {
+        this.name = name;
+        this.directory = directory;
+        this.snapshot = snapshot;
+    }
+
+    //标记文件已修改
+    public void markDirty(String fileName) {
+        dirtyFiles.add(fileName);
+        markCount.incrementAndGet();
+    }
+
+    //文件是否有尚未写入磁盘的修改（包括正在写入和写入失败的）
+    public boolean isDirty(String fileName) {
+        requeueFailed();
+        return dirtyFiles.contains(fileName) || inFlight.containsKey(fileName);
+    }
+
+    //取回写入失败的文件，重新标记
+    private void requeueFailed() {
+        String fileName;
+        while ((fileName = failedFiles.poll()) != null) {
+            dirtyFiles.add(fileName);
+        }
+    }
+
+    //服务端 tick 调用，到达间隔后提交一次写入
+    public void tick() {
+        requeueFailed();
+        if (dirtyFiles.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastFlushTime >= ModConfigs.FLUSH_INTERVAL_SECONDS.get() * 1000L) {
+            submitWrite(now, null);
+        }
+    }
+
+    /**
+     * 立即提交写入但不等待。本次的文件全部写入成功，并且之前失败的文件都已重新写入后，
+     * 在 IO 线程上执行 onWritten。
+     */
+    public void submit(Runnable onWritten) {
+        requeueFailed();
+        if (!dirtyFiles.isEmpty() || onWritten != null) {
+            submitWrite(System.currentTimeMillis(), onWritten);
+        }
+    }
+
+    public boolean flush() {
+        return flush(null);
+    }
+
+    //立即写入并等待完成，最多等待 flush_deadline_ms；返回是否在期限内全部写入成功
+    public boolean flush(Runnable onWritten) {
+        submit(onWritten);
+        long deadline = ModConfigs.FLUSH_DEADLINE_MS.get();
+        boolean completed = false;
+        try {
+            lastWrite.get(deadline, TimeUnit.MILLISECONDS);
+            completed = true;
+        } catch (TimeoutException e) {
+            ModConfigs.DebugLog.error("Flush of {} did not finish within {} ms", name, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            ModConfigs.DebugLog.error("Flush of {} failed: {}", name, e.getCause().getMessage());
+        }
+        ModConfigs.DebugLog.info("Flushed {}: {} writes issued, {} coalesced", name, getWriteCount(), getCoalescedWrites());
+        return completed;
+    }
+
+    private void submitWrite(long now, Runnable onWritten) {
+        lastFlushTime = now;
+        Path dir = directory.get();
+        List<String> fileNames = new ArrayList<>(dirtyFiles.size());
+        List<Snapshot> snapshots = new ArrayList<>(dirtyFiles.size());
+        for (String fileName : dirtyFiles) {
+            Snapshot content = snapshot.apply(fileName);
+            if (content != UNCHANGED) {
+                fileNames.add(fileName);
+                snapshots.add(content);
+                inFlight.merge(fileName, 1, Integer::sum);
+            }
+        }
+        dirtyFiles.clear();
+        writeCount.addAndGet(fileNames.size());
+        lastWrite = IO_EXECUTOR.submit(() -> {
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < fileNames.size(); i++) {
+                String fileName = fileNames.get(i);
+                Path target = dir.resolve(fileName);
+                try {
+                    byte[] content = snapshots.get(i).serialize();
+                    if (content == null) {
+                        Files.deleteIfExists(target);
+                    } else {
+                        writeAtomically(target, content);
+                    }
+                    unresolvedFiles.remove(fileName);
+                } catch (IOException | RuntimeException e) {
+                    failed.add(fileName);
+                    unresolvedFiles.add(fileName);
+                    // 先放回失败队列再移出 inFlight，服务端线程始终能看到它未写入
+                    failedFiles.add(fileName);
+                    ModConfigs.DebugLog.error("Failed to save {} ({}): {}", name, fileName, e.getMessage());
+                }
+                inFlight.computeIfPresent(fileName, (key, count) -> count > 1 ? count - 1 : null);
+            }
+            if (!fileNames.isEmpty()) {
+                ModConfigs.DebugLog.info("Saved {} file(s) of {} to {}", fileNames.size() - failed.size(), name, dir.toString());
+            }
+            if (!failed.isEmpty()) {
+                throw new IOException("Failed to save " + failed.size() + " file(s) of " + name + ": " + failed);
+            }
+            if (!unresolvedFiles.isEmpty()) {
+                throw new IOException("Earlier failed file(s) of " + name + " are not written yet: " + unresolvedFiles);
+            }
+            if (onWritten != null) {
+                onWritten.run();
+            }
+            return null;
+        });
+    }
+
+    //在共享 IO 线程上执行任务，与文件写入保持先后顺序
+    static Future<?> runOnIOThread(Runnable task) {
+        return IO_EXECUTOR.submit(task);
+    }
+
+    //共享 IO 线程，用于需要排在已提交写入之后的读取
+    public static Executor ioExecutor() {
+        return IO_EXECUTOR;
+    }
+
+    //在 IO 线程上执行并等待结果；已经在 IO 线程上时直接执行
+    public static <T> T callOnIOThread(Callable<T> task) throws IOException {
+        if (Thread.currentThread() == ioThread) {
+            try {
+                return task.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        try {
+            return IO_EXECUTOR.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the IO thread", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ioException ? ioException : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    //先写临时文件再替换，避免崩溃时留下半个文件
+    public static void writeAtomically(Path target, String data) throws IOException {
+        writeAtomically(target, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void writeAtomically(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, data);
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    //被合并掉的写入次数
+    @Override
+    public long getCoalescedWrites() {
+        return markCount.get() - writeCount.get();
+    }
+}
@@ -0,0 +1,14 @@
+package com.kicobicn.TPATools.storage;
+
+/**
+ * 存储写入统计，用于 /tpatools stats。
+ */
+public interface WriteStats {
+    String getName();
+
+    //实际发出的写入次数（文件写入或数据库事务）
+    long getWriteCount();
+
+    //被合并掉的修改次数
+    long getCoalescedWrites();
+}
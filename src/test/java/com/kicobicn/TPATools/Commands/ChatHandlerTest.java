@@ -0,0 +1,175 @@
+package com.kicobicn.TPATools.Commands;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.chat.TextColor;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatHandlerTest {
+    private static final UUID STEVE = new UUID(0, 1);
+    private static final UUID ALEX = new UUID(0, 2);
+
+    //测试中 &1 总是展示同一个物品
+    private static final IntFunction<ItemPlaceholders.Match> NO_PLACEHOLDERS = index -> null;
+
+    private static IntFunction<ItemPlaceholders.Match> slotOne(String message) {
+        return index -> message.charAt(index + 1) == '1'
+                ? new ItemPlaceholders.Match(2, Component.literal("[Stone]").withStyle(ChatFormatting.GOLD))
+                : null;
+    }
+
+    @Test
+    void stylesMentionsAndKeepsText() {
+        MentionMatcher matcher = new MentionMatcher(Map.of(STEVE, "Steve", ALEX, "Alex"));
+        String message = "hi steve and ALEX!";
+        List<MentionMatcher.Mention> seen = new ArrayList<>();
+        MutableComponent result = ChatHandler.buildMessage(message, matcher.find(message), NO_PLACEHOLDERS, seen::add);
+
+        assertEquals("hi Steve and Alex!", result.getString());
+        assertEquals(List.of(STEVE, ALEX), seen.stream().map(MentionMatcher.Mention::player).toList());
+        List<Component> parts = result.getSiblings();
+        assertEquals(5, parts.size());
+        assertEquals(TextColor.fromLegacyFormat(ChatFormatting.AQUA), parts.get(1).getStyle().getColor());
+        assertNull(parts.get(2).getStyle().getColor());
+    }
+
+    @Test
+    void replacesPlaceholders() {
+        MentionMatcher matcher = new MentionMatcher(Map.of(STEVE, "Steve"));
+        String message = "Steve look &1 &0";
+        MutableComponent result = ChatHandler.buildMessage(message, matcher.find(message), slotOne(message), mention -> {
+        });
+        assertEquals("Steve look [Stone] &0", result.getString());
+    }
+
+    //& 后面是玩家名时按玩家名处理；被占位符覆盖的玩家名不标色也不提示
+    @Test
+    void mentionsAndPlaceholdersDoNotOverlap() {
+        UUID and = new UUID(0, 3);
+        MentionMatcher matcher = new MentionMatcher(Map.of(STEVE, "Steve", and, "and"));
+        String message = "&Steve &hand";
+        List<MentionMatcher.Mention> seen = new ArrayList<>();
+        IntFunction<ItemPlaceholders.Match> placeholders = index -> message.startsWith("hand", index + 1)
+                ? new ItemPlaceholders.Match(5, Component.literal("[Sword]"))
+                : null;
+        MutableComponent result = ChatHandler.buildMessage(message, matcher.find(message), placeholders, seen::add);
+
+        assertEquals("&Steve [Sword]", result.getString());
+        assertEquals(List.of(STEVE), seen.stream().map(MentionMatcher.Mention::player).toList());
+    }
+
+    /**
+     * 与原来的做法比较：每个在线玩家各做一次小写转换和正则替换，拼成带格式代码的字符串，
+     * 再转成 Component、取回文本，最后用 ITEM_PATTERN 扫描物品占位符。
+     * 两种做法的文本、被标色的玩家名和物品占位符必须相同。
+     */
+    @Test
+    void matchesLegacyPath() {
+        String[] messages = {
+                "anyone up for the nether trip tonight?",
+                "Player042 can you bring &1 to spawn, Player007 says hi",
+                "ok",
+                "player013 player014 player015 meet at the base, I have &1 and &2 for you, bring food and a pickaxe please",
+                "&1&1 PLAYER001&1",
+        };
+        for (int players : new int[]{10, 50, 200}) {
+            Map<UUID, String> online = new LinkedHashMap<>();
+            for (int i = 0; i < players; i++) {
+                online.put(new UUID(1, i), String.format("Player%03d", i));
+            }
+            List<String> names = new ArrayList<>(online.values());
+            String senderName = names.get(0);
+            MentionMatcher matcher = new MentionMatcher(online);
+
+            for (String message : messages) {
+                MutableComponent legacy = legacyFormat(message, names, senderName);
+                MutableComponent single = newFormat(message, matcher);
+                String legacyText = legacy.getString();
+                assertEquals(ChatFormatting.stripFormatting(legacyText), single.getString(), message);
+                assertEquals(legacyMentions(legacyText), styledParts(single, ChatFormatting.AQUA), message);
+                assertEquals(styledParts(legacy, ChatFormatting.GOLD), styledParts(single, ChatFormatting.GOLD), message);
+            }
+        }
+    }
+
+    private static final Pattern LEGACY_MENTION = Pattern.compile(
+            Pattern.quote(ChatFormatting.AQUA.toString()) + "(.*?)" + Pattern.quote(ChatFormatting.RESET.toString()));
+
+    //原来的做法用格式代码给玩家名标色
+    private static List<String> legacyMentions(String text) {
+        List<String> mentions = new ArrayList<>();
+        Matcher matcher = LEGACY_MENTION.matcher(text);
+        while (matcher.find()) {
+            mentions.add(matcher.group(1));
+        }
+        return mentions;
+    }
+
+    private static List<String> styledParts(Component message, ChatFormatting color) {
+        return message.getSiblings().stream()
+                .filter(part -> TextColor.fromLegacyFormat(color).equals(part.getStyle().getColor()))
+                .map(Component::getString)
+                .toList();
+    }
+
+    private static MutableComponent newFormat(String message, MentionMatcher matcher) {
+        return ChatHandler.buildMessage(message, matcher.find(message), slotOne(message), mention -> {
+        });
+    }
+
+    private static final Pattern ITEM_PATTERN = Pattern.compile("&(\\d)");
+
+    //原来的 processMentions 和 processItemDisplay，去掉了数据包和物品栏部分
+    private static MutableComponent legacyFormat(String message, List<String> onlineNames, String senderName) {
+        String processedMessage = message;
+        for (String playerName : onlineNames) {
+            if (playerName.equals(senderName)) {
+                continue;
+            }
+            if (message.toLowerCase().contains(playerName.toLowerCase())) {
+                processedMessage = processedMessage.replaceAll("(?i)" + Pattern.quote(playerName),
+                        ChatFormatting.AQUA + playerName + ChatFormatting.RESET);
+            }
+        }
+        if (processedMessage.contains(senderName)) {
+            processedMessage = processedMessage.replaceAll("(?i)" + Pattern.quote(senderName),
+                    ChatFormatting.AQUA + senderName + ChatFormatting.RESET);
+        }
+
+        String text = Component.nullToEmpty(processedMessage).getString();
+        List<Object> messageParts = new ArrayList<>();
+        Matcher matcher = ITEM_PATTERN.matcher(text);
+        int lastIndex = 0;
+        while (matcher.find()) {
+            if (matcher.start() > lastIndex) {
+                messageParts.add(text.substring(lastIndex, matcher.start()));
+            }
+            if (matcher.group(1).equals("1")) {
+                messageParts.add(Component.literal("[Stone]").withStyle(ChatFormatting.GOLD));
+            } else {
+                messageParts.add(matcher.group(0));
+            }
+            lastIndex = matcher.end();
+        }
+        if (lastIndex < text.length()) {
+            messageParts.add(text.substring(lastIndex));
+        }
+        MutableComponent finalMessage = Component.literal("");
+        for (Object part : messageParts) {
+            if (part instanceof String string) {
+                finalMessage.append(Component.literal(string));
+            } else {
+                finalMessage.append((MutableComponent) part);
+            }
+        }
+        return finalMessage;
+    }
+}
@@ -0,0 +1,223 @@
+package com.kicobicn.TPATools.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.kicobicn.TPATools.Commands.HomeHandler.Home;
+import com.kicobicn.TPATools.Commands.HomeHandler.PublicHomeInfo;
+import net.minecraft.resources.ResourceLocation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+    private static final ResourceLocation OVERWORLD = ResourceLocation.parse("minecraft:overworld");
+    private static final ResourceLocation NETHER = ResourceLocation.parse("minecraft:the_nether");
+    //与 FileHomeStore 写 JSON 时使用的 Gson 相同
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    @Test
+    void varIntRoundTrip() throws IOException {
+        int[] values = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        int[] lengths = {1, 1, 1, 2, 2, 3, 3, 4, 5, 5, 5};
+        for (int i = 0; i < values.length; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            BinaryCodec.writeVarInt(new DataOutputStream(bytes), values[i]);
+            assertEquals(lengths[i], bytes.size(), "encoded length of " + values[i]);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            assertEquals(values[i], BinaryCodec.readVarInt(in));
+            assertEquals(0, in.available());
+        }
+    }
+
+    @Test
+    void varIntRejectsOverlongInput() {
+        byte[] data = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        assertThrows(IOException.class, () -> BinaryCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void homesRoundTrip(boolean gzip) throws IOException {
+        Map<String, Home> homes = sampleHomes(new Random(1), 50);
+        homes.put("nowhere", new Home(new Home.Position(1, 2, 3, 0, 0, null), new ArrayList<>()));
+
+        byte[] data = BinaryCodec.encode(BinaryCodec.TYPE_HOMES, gzip,
+                (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, homes));
+        assertEquals(gzip ? 1 : 0, data[6], "gzip flag");
+        Map<String, Home> decoded = BinaryCodec.decode(data, BinaryCodec.TYPE_HOMES, HomeCodec::readHomes);
+        assertHomesEqual(homes, decoded);
+    }
+
+    @Test
+    void dimensionTableStoresEachDimensionOnce() throws IOException {
+        Map<String, Home> homes = sampleHomes(new Random(2), 20);
+        byte[] data = BinaryCodec.encode(BinaryCodec.TYPE_HOMES, false,
+                (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, homes));
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        assertEquals(text.indexOf("minecraft:overworld"), text.lastIndexOf("minecraft:overworld"));
+        assertEquals(text.indexOf("minecraft:the_nether"), text.lastIndexOf("minecraft:the_nether"));
+
+        BinaryCodec.DimensionTable table = new BinaryCodec.DimensionTable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        table.writeDimension(out, OVERWORLD);
+        table.writeDimension(out, NETHER);
+        table.writeDimension(out, OVERWORLD);
+        table.writeDimension(out, null);
+        // 每个索引只占一个字节，0 表示没有维度
+        assertArrayEquals(new byte[]{1, 2, 1, 0}, bytes.toByteArray());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(OVERWORLD, table.readDimension(in));
+        assertEquals(NETHER, table.readDimension(in));
+        assertEquals(OVERWORLD, table.readDimension(in));
+        assertNull(table.readDimension(in));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void indexRoundTripVersion2(boolean gzip) throws IOException {
+        UUID owner = new UUID(1, 1);
+        UUID sharedOwner = new UUID(2, 2);
+        Map<String, PublicHomeInfo> ownerHomes = new HashMap<>();
+        ownerHomes.put("base", new PublicHomeInfo(owner, "Alice", "base", new Home.Position(10.5, 64, -3.25, 90, 0, NETHER)));
+        ownerHomes.put("legacy", new PublicHomeInfo(owner, "Alice", "legacy", null));
+        Map<String, Map<String, PublicHomeInfo>> publicHomes = Map.of(owner.toString(), ownerHomes);
+        Map<UUID, Map<String, Home>> sharedHomes = Map.of(sharedOwner, sampleHomes(new Random(3), 5));
+
+        byte[] data = BinaryCodec.encode(BinaryCodec.TYPE_PUBLIC_INDEX, gzip,
+                (out, dimensions) -> HomeCodec.writeIndex(out, dimensions, publicHomes, sharedHomes));
+        assertEquals(2, data[5], "format version");
+
+        Map<String, Map<String, PublicHomeInfo>> publicOut = new HashMap<>();
+        Map<UUID, Map<String, Home>> sharedOut = new HashMap<>();
+        Boolean complete = BinaryCodec.decode(data, BinaryCodec.TYPE_PUBLIC_INDEX,
+                (in, dimensions, version) -> HomeCodec.readIndex(in, dimensions, version, publicOut, sharedOut));
+        assertTrue(complete);
+
+        Map<String, PublicHomeInfo> decodedOwner = publicOut.get(owner.toString());
+        assertEquals(Set.of("base", "legacy"), decodedOwner.keySet());
+        assertEquals("Alice", decodedOwner.get("base").ownerName);
+        assertPositionEquals(ownerHomes.get("base").position, decodedOwner.get("base").position);
+        assertNull(decodedOwner.get("legacy").position);
+        assertEquals(sharedHomes.keySet(), sharedOut.keySet());
+        assertHomesEqual(sharedHomes.get(sharedOwner), sharedOut.get(sharedOwner));
+    }
+
+    //版本 1 的索引：公开家园没有坐标，也没有分享列表，读取后需要重建
+    @Test
+    void indexVersion1IsReadWithoutPositions() throws IOException {
+        UUID owner = new UUID(3, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x54504154);
+        out.writeByte(BinaryCodec.TYPE_PUBLIC_INDEX);
+        out.writeByte(1);
+        out.writeByte(0);
+        BinaryCodec.writeVarInt(out, 0);
+        BinaryCodec.writeVarInt(out, 1);
+        BinaryCodec.writeUUID(out, owner);
+        out.writeUTF("");
+        BinaryCodec.writeVarInt(out, 2);
+        out.writeUTF("home");
+        out.writeUTF("farm");
+        out.flush();
+
+        Map<String, Map<String, PublicHomeInfo>> publicOut = new HashMap<>();
+        Map<UUID, Map<String, Home>> sharedOut = new HashMap<>();
+        Boolean complete = BinaryCodec.decode(bytes.toByteArray(), BinaryCodec.TYPE_PUBLIC_INDEX,
+                (in, dimensions, version) -> HomeCodec.readIndex(in, dimensions, version, publicOut, sharedOut));
+        assertFalse(complete);
+        Map<String, PublicHomeInfo> ownerHomes = publicOut.get(owner.toString());
+        assertEquals(Set.of("home", "farm"), ownerHomes.keySet());
+        assertNull(ownerHomes.get("home").ownerName);
+        assertNull(ownerHomes.get("home").position);
+        assertTrue(sharedOut.isEmpty());
+    }
+
+    @Test
+    void rejectsUnknownHeaders() throws IOException {
+        byte[] data = BinaryCodec.encode(BinaryCodec.TYPE_HOMES, false,
+                (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, Map.of()));
+        assertThrows(IOException.class, () -> BinaryCodec.decode(data, BinaryCodec.TYPE_PUBLIC_INDEX,
+                (in, dimensions, version) -> true));
+
+        byte[] newer = data.clone();
+        newer[5] = 3;
+        assertThrows(IOException.class, () -> BinaryCodec.decode(newer, BinaryCodec.TYPE_HOMES, HomeCodec::readHomes));
+
+        byte[] notBinary = "{}".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> BinaryCodec.decode(notBinary, BinaryCodec.TYPE_HOMES, HomeCodec::readHomes));
+    }
+
+    //与 JSON 分片比较文件大小，并检查两种格式都能完整读回
+    @Test
+    void isSmallerThanJson() throws IOException {
+        for (int count : new int[]{10, 100, 1000}) {
+            Map<String, Home> homes = sampleHomes(new Random(count), count);
+            byte[] json = GSON.toJson(homes).getBytes(StandardCharsets.UTF_8);
+            byte[] binary = BinaryCodec.encode(BinaryCodec.TYPE_HOMES, false,
+                    (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, homes));
+            byte[] gzip = BinaryCodec.encode(BinaryCodec.TYPE_HOMES, true,
+                    (out, dimensions) -> HomeCodec.writeHomes(out, dimensions, homes));
+
+            assertHomesEqual(homes, BinaryCodec.decode(binary, BinaryCodec.TYPE_HOMES, HomeCodec::readHomes));
+            assertHomesEqual(homes, BinaryCodec.decode(gzip, BinaryCodec.TYPE_HOMES, HomeCodec::readHomes));
+            assertHomesEqual(homes, readJson(json));
+            assertTrue(binary.length * 2 < json.length, "binary should be less than half the JSON size");
+            assertTrue(gzip.length < json.length);
+        }
+    }
+
+    private static Map<String, Home> readJson(byte[] json) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8))) {
+            return HomeCodec.readHomes(reader);
+        }
+    }
+
+    //随机生成家园：坐标在主世界或下界，大约一半的家园分享给 1 到 3 个玩家
+    private static Map<String, Home> sampleHomes(Random random, int count) {
+        Map<String, Home> homes = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Home.Position position = new Home.Position(
+                    random.nextInt(20000) - 10000 + random.nextDouble(),
+                    random.nextInt(256) - 64,
+                    random.nextInt(20000) - 10000 + random.nextDouble(),
+                    random.nextFloat() * 360 - 180,
+                    random.nextFloat() * 180 - 90,
+                    random.nextBoolean() ? OVERWORLD : NETHER);
+            List<UUID> shared = new ArrayList<>();
+            if (random.nextBoolean()) {
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    shared.add(new UUID(random.nextLong(), random.nextLong()));
+                }
+            }
+            homes.put("home" + i, new Home(position, shared));
+        }
+        return homes;
+    }
+
+    private static void assertHomesEqual(Map<String, Home> expected, Map<String, Home> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Home> entry : expected.entrySet()) {
+            Home home = actual.get(entry.getKey());
+            assertPositionEquals(entry.getValue().position, home.position);
+            assertEquals(entry.getValue().sharedPlayers, home.sharedPlayers);
+        }
+    }
+
+    private static void assertPositionEquals(Home.Position expected, Home.Position actual) {
+        assertEquals(expected.x, actual.x);
+        assertEquals(expected.y, actual.y);
+        assertEquals(expected.z, actual.z);
+        assertEquals(expected.xRot, actual.xRot);
+        assertEquals(expected.yRot, actual.yRot);
+        assertEquals(expected.dimension, actual.dimension);
+    }
+}